@@ -0,0 +1,24 @@
+import java.net.InetAddress;
+import java.util.function.LongSupplier;
+
+// Legacy UDP buzz attribution: linear scan of the registry by sender address
+public class AddressLookupWorkload implements LongSupplier {
+    private final ClientRegistry registry = new ClientRegistry();
+    private final InetAddress[] addresses;
+    private int next;
+
+    public AddressLookupWorkload(int size) {
+        BenchClients.create(size).forEach(registry::add);
+        addresses = new InetAddress[size];
+        for (int i = 0; i < size; i++) {
+            addresses[i] = BenchClients.addressOf(i);
+        }
+    }
+
+    @Override
+    public long getAsLong() {
+        ClientThread client = registry.findByAddress(addresses[next]);
+        next = (next + 1) % addresses.length;
+        return client.getClientID();
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Builds players for benchmarks: each has its own 10.x.y.z address and a NullConnection
+public class BenchClients {
+
+    public static List<ClientThread> create(int count) {
+        List<ClientThread> clients = new ArrayList<>(count);
+        quietly(() -> {
+            for (int i = 0; i < count; i++) {
+                clients.add(new ClientThread(new NullConnection(addressOf(i)), i));
+            }
+        });
+        return clients;
+    }
+
+    public static InetAddress addressOf(int i) {
+        byte[] ip = {10, (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+        try {
+            return InetAddress.getByAddress(ip);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Questions bundled with the server jar
+    public static List<Question> loadQuestions() {
+        List<Question> questions = new ArrayList<>();
+        for (String line : loadQuestionLines()) {
+            questions.add(new Question(line));
+        }
+        return questions;
+    }
+
+    public static List<String> loadQuestionLines() {
+        try (InputStream is = BenchClients.class.getResourceAsStream("/Questions.txt");
+             BufferedReader br = new BufferedReader(new InputStreamReader(is, "UTF-8"))) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Compiles a bank of size questions, the bundled ones repeated and spread over
+    // eight categories and three difficulties, and maps it
+    public static MappedQuestionBank compileBank(int size) {
+        try {
+            Path source = Files.createTempFile("bench", ".txt");
+            Path file = Files.createTempFile("bench", ".tqb");
+            file.toFile().deleteOnExit();
+            List<String> lines = loadQuestionLines();
+
+            try (BufferedWriter out = Files.newBufferedWriter(source)) {
+                for (int i = 0; i < size; i++) {
+                    String line = lines.get(i % lines.size());
+                    out.write("Question " + (i + 1) + ": #" + i + " " + line.substring(line.indexOf(':') + 1).trim()
+                            + "|category-" + (i % 8) + "|" + (1 + i % 3) + "\n");
+                }
+            }
+            quietly(() -> {
+                try (BufferedReader in = Files.newBufferedReader(source)) {
+                    QuestionBankCompiler.compile(in, file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Files.delete(source);
+            return MappedQuestionBank.open(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Runs setup code with the server's per-player console logging switched off
+    public static void quietly(Runnable setup) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            setup.run();
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// One question fan-out to every player in a room (GameRoom.broadcastQuestion)
+public class BroadcastWorkload implements LongSupplier {
+    private final GameScheduler scheduler = new GameScheduler();
+    private final List<Question> deck = BenchClients.loadQuestions();
+    private final GameRoom room = new GameRoom("bench", deck, 0, scheduler);
+    private int next;
+
+    public BroadcastWorkload(int size) {
+        List<ClientThread> clients = BenchClients.create(size);
+        BenchClients.quietly(() -> {
+            clients.forEach(room::join);
+            while (room.getPlayerCount() < size) {
+                Thread.onSpinWait(); // joins are seated on the room's loop
+            }
+        });
+    }
+
+    @Override
+    public long getAsLong() {
+        room.broadcastQuestion(deck.get(next));
+        next = (next + 1) % deck.size();
+        return next;
+    }
+}
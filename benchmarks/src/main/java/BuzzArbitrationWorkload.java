@@ -0,0 +1,29 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// Buzz insertion, meant to be called from several threads at once. Every player
+// buzzes once per round and a new round opens after the last seat has buzzed.
+public class BuzzArbitrationWorkload implements LongSupplier {
+    private final BuzzArbiter arbiter = new BuzzArbiter();
+    private final ClientThread[] clients;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public BuzzArbitrationWorkload(int size) {
+        List<ClientThread> created = BenchClients.create(size);
+        clients = created.toArray(new ClientThread[0]);
+        for (int i = 0; i < size; i++) {
+            clients[i].setRoom(null, i);
+        }
+        arbiter.openRound(size);
+    }
+
+    @Override
+    public long getAsLong() {
+        int seat = Math.floorMod(next.getAndIncrement(), clients.length);
+        if (seat == 0) {
+            arbiter.openRound(clients.length);
+        }
+        return arbiter.offer(clients[seat], System.nanoTime()) ? 1 : 0;
+    }
+}
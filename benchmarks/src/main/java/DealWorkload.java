@@ -0,0 +1,32 @@
+import java.util.*;
+import java.util.function.LongSupplier;
+
+// Deals a 20-question deck from a mapped bank for a room of 8 players who have each
+// already played 100 questions (TriviaServer.dealDeck with no filter)
+public class DealWorkload implements LongSupplier {
+    protected final DeckBuilder builder;
+    protected final List<SeenQuestions> players = new ArrayList<>();
+    private long seed;
+
+    public DealWorkload(int size) {
+        MappedQuestionBank bank = BenchClients.compileBank(size);
+        builder = new DeckBuilder(bank);
+        Random random = new Random(42);
+        for (int p = 0; p < 8; p++) {
+            SeenQuestions seen = new SeenQuestions(bank.size());
+            for (int i = 0; i < 100; i++) {
+                seen.add(bank.getId(random.nextInt(bank.size())));
+            }
+            players.add(seen);
+        }
+    }
+
+    protected List<Question> deal(long seed) {
+        return builder.deal(20, null, 0, seed, players);
+    }
+
+    @Override
+    public long getAsLong() {
+        return deal(seed++).size();
+    }
+}
@@ -0,0 +1,15 @@
+import java.util.List;
+
+// Same as DealWorkload, but only one category and difficulty, which takes the
+// reservoir-sampling pass over the bank's index
+public class FilteredDealWorkload extends DealWorkload {
+
+    public FilteredDealWorkload(int size) {
+        super(size);
+    }
+
+    @Override
+    protected List<Question> deal(long seed) {
+        return builder.deal(20, "category-3", 2, seed, players);
+    }
+}
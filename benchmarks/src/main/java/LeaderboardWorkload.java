@@ -0,0 +1,30 @@
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+// One answer's worth of leaderboard work: re-rank the player, then look up its rank
+public class LeaderboardWorkload implements LongSupplier {
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final List<ClientThread> clients;
+    private final Random random = new Random(42);
+
+    public LeaderboardWorkload(int size) {
+        clients = BenchClients.create(size);
+        for (int i = 0; i < clients.size(); i++) {
+            clients.get(i).increaseScore(10 * random.nextInt(21) - 100);
+            leaderboard.add(clients.get(i), i);
+        }
+    }
+
+    @Override
+    public long getAsLong() {
+        ClientThread client = clients.get(random.nextInt(clients.size()));
+        if (random.nextBoolean()) {
+            client.increaseScore(10);
+        } else {
+            client.decreaseScore(10);
+        }
+        leaderboard.update(client);
+        return leaderboard.rank(client);
+    }
+}
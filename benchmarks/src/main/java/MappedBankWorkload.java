@@ -0,0 +1,18 @@
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+// Fetches a random question from a memory-mapped compiled bank, as rooms do when they
+// play a question from --bank: mostly cache hits for small banks, decodes for large ones
+public class MappedBankWorkload implements LongSupplier {
+    private final MappedQuestionBank bank;
+    private final Random random = new Random(42);
+
+    public MappedBankWorkload(int size) {
+        bank = BenchClients.compileBank(size);
+    }
+
+    @Override
+    public long getAsLong() {
+        return bank.get(random.nextInt(bank.size())).getCorrectAnswer();
+    }
+}
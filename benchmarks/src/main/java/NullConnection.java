@@ -0,0 +1,40 @@
+import java.net.InetAddress;
+
+// Connection that discards everything, so benchmarks measure the server's own work
+// rather than socket I/O. Counts bytes so the JIT can't drop the writes.
+public class NullConnection implements ClientConnection {
+    private final InetAddress address;
+    private long bytes;
+
+    public NullConnection(InetAddress address) {
+        this.address = address;
+    }
+
+    @Override
+    public void send(String message) {
+        bytes += message.length() + 1;
+    }
+
+    @Override
+    public void sendFrame(byte[] frame) {
+        bytes += frame.length;
+    }
+
+    @Override
+    public void sendTick(byte[] frame) {
+        bytes += frame.length;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return address;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
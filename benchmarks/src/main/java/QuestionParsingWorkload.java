@@ -0,0 +1,20 @@
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// Parses one line of the question bank per call, as loadQuestions does at startup
+public class QuestionParsingWorkload implements LongSupplier {
+    private final String[] lines;
+    private int next;
+
+    public QuestionParsingWorkload(int size) {
+        List<String> bank = BenchClients.loadQuestionLines();
+        lines = bank.toArray(new String[0]);
+    }
+
+    @Override
+    public long getAsLong() {
+        Question q = new Question(lines[next]);
+        next = (next + 1) % lines.length;
+        return q.getCorrectAnswer();
+    }
+}
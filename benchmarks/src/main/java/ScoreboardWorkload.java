@@ -0,0 +1,22 @@
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+// End-of-game scoreboard (GameRoom.endGame): top of the room's leaderboard, encoded
+public class ScoreboardWorkload implements LongSupplier {
+    private final Leaderboard leaderboard = new Leaderboard();
+
+    public ScoreboardWorkload(int size) {
+        List<ClientThread> clients = BenchClients.create(size);
+        Random random = new Random(42);
+        for (int i = 0; i < clients.size(); i++) {
+            clients.get(i).increaseScore(10 * random.nextInt(21) - 100);
+            leaderboard.add(clients.get(i), i);
+        }
+    }
+
+    @Override
+    public long getAsLong() {
+        return WireProtocol.scoreboard(leaderboard.top(10)).encoded(true).length;
+    }
+}
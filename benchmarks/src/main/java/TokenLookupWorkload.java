@@ -0,0 +1,25 @@
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// UDP buzz attribution through the session-token index
+public class TokenLookupWorkload implements LongSupplier {
+    private final ClientRegistry registry = new ClientRegistry();
+    private final long[] tokens;
+    private int next;
+
+    public TokenLookupWorkload(int size) {
+        List<ClientThread> clients = BenchClients.create(size);
+        clients.forEach(registry::add);
+        tokens = new long[size];
+        for (int i = 0; i < size; i++) {
+            tokens[i] = clients.get(i).getSessionToken();
+        }
+    }
+
+    @Override
+    public long getAsLong() {
+        ClientThread client = registry.findByToken(tokens[next]);
+        next = (next + 1) % tokens.length;
+        return client.getClientID();
+    }
+}
@@ -0,0 +1,176 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.*;
+
+// Hot paths of the trivia server at 10 to 10,000 connected players.
+// Run with: java -jar benchmarks/target/benchmarks.jar
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerBenchmarks {
+
+    @State(Scope.Thread)
+    public static class QuestionParsing {
+        LongSupplier workload;
+
+        @Setup
+        public void setup() {
+            workload = Workloads.create("QuestionParsingWorkload", 0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MappedBank {
+        @Param({"1000", "1000000"})
+        int questions;
+        LongSupplier workload;
+
+        @Setup
+        public void setup() {
+            workload = Workloads.create("MappedBankWorkload", questions);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Deal {
+        @Param({"1000", "1000000"})
+        int questions;
+        LongSupplier workload;
+        LongSupplier filtered;
+
+        @Setup
+        public void setup() {
+            workload = Workloads.create("DealWorkload", questions);
+            filtered = Workloads.create("FilteredDealWorkload", questions);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Broadcast {
+        @Param({"10", "100", "1000", "10000"})
+        int clients;
+        LongSupplier workload;
+
+        @Setup
+        public void setup() {
+            workload = Workloads.create("BroadcastWorkload", clients);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AddressLookup {
+        @Param({"10", "100", "1000", "10000"})
+        int clients;
+        LongSupplier workload;
+
+        @Setup
+        public void setup() {
+            workload = Workloads.create("AddressLookupWorkload", clients);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TokenLookup {
+        @Param({"10", "100", "1000", "10000"})
+        int clients;
+        LongSupplier workload;
+
+        @Setup
+        public void setup() {
+            workload = Workloads.create("TokenLookupWorkload", clients);
+        }
+    }
+
+    // Shared by all benchmark threads to measure contention
+    @State(Scope.Benchmark)
+    public static class BuzzArbitration {
+        @Param({"10", "100", "1000", "10000"})
+        int clients;
+        LongSupplier workload;
+
+        @Setup
+        public void setup() {
+            workload = Workloads.create("BuzzArbitrationWorkload", clients);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Scoreboard {
+        @Param({"10", "100", "1000", "10000"})
+        int clients;
+        LongSupplier workload;
+
+        @Setup
+        public void setup() {
+            workload = Workloads.create("ScoreboardWorkload", clients);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LiveLeaderboard {
+        @Param({"10", "100", "1000", "10000"})
+        int clients;
+        LongSupplier workload;
+
+        @Setup
+        public void setup() {
+            workload = Workloads.create("LeaderboardWorkload", clients);
+        }
+    }
+
+    @Benchmark
+    public long parseQuestion(QuestionParsing state) {
+        return state.workload.getAsLong();
+    }
+
+    @Benchmark
+    public long decodeMappedQuestion(MappedBank state) {
+        return state.workload.getAsLong();
+    }
+
+    @Benchmark
+    public long dealDeck(Deal state) {
+        return state.workload.getAsLong();
+    }
+
+    @Benchmark
+    public long dealFilteredDeck(Deal state) {
+        return state.filtered.getAsLong();
+    }
+
+    @Benchmark
+    public long broadcastQuestion(Broadcast state) {
+        return state.workload.getAsLong();
+    }
+
+    @Benchmark
+    public long findClientByAddress(AddressLookup state) {
+        return state.workload.getAsLong();
+    }
+
+    @Benchmark
+    public long findClientByToken(TokenLookup state) {
+        return state.workload.getAsLong();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long buzzUnderContention(BuzzArbitration state) {
+        return state.workload.getAsLong();
+    }
+
+    @Benchmark
+    public long buildFinalScoreboard(Scoreboard state) {
+        return state.workload.getAsLong();
+    }
+
+    @Benchmark
+    public long updateLeaderboard(LiveLeaderboard state) {
+        return state.workload.getAsLong();
+    }
+}
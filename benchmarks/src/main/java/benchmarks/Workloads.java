@@ -0,0 +1,22 @@
+package benchmarks;
+
+import java.util.function.LongSupplier;
+
+// The game's classes live in the default package, which named packages can't
+// import and JMH won't generate benchmarks for. Each workload is a small
+// default-package class implementing LongSupplier; the benchmarks load it
+// reflectively once during setup and then call it through the interface, which
+// the JIT inlines like a direct call.
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    static LongSupplier create(String className, int size) {
+        try {
+            return (LongSupplier) Class.forName(className).getConstructor(int.class).newInstance(size);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create workload " + className, e);
+        }
+    }
+}
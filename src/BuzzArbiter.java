@@ -0,0 +1,112 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Lock-free buzz arbitration for one room. Each question opens a new round:
+// the first buzz is claimed with a single compareAndSet, later buzzes are kept
+// for auditing, and an atomic bitset keyed by the player's seat in the room
+// drops duplicates. A buzz that names a round other than the open one, such as
+// a late resend for the previous question, is dropped too. Every buzz carries its System.nanoTime() arrival and an
+// estimate of when the player sent it; the round is ranked by the estimate
+// when it closes, which is the arrival time unless latency compensation is on.
+public class BuzzArbiter {
+
+    public static final class Buzz {
+        private final ClientThread client;
+        private final long arrivalNanos;
+        private final long sentNanos;
+
+        Buzz(ClientThread client, long arrivalNanos, long sentNanos) {
+            this.client = client;
+            this.arrivalNanos = arrivalNanos;
+            this.sentNanos = sentNanos;
+        }
+
+        public ClientThread getClient() {
+            return client;
+        }
+
+        public long getArrivalNanos() {
+            return arrivalNanos;
+        }
+
+        // Arrival minus the player's estimated one-way delay, on the server's clock
+        public long getSentNanos() {
+            return sentNanos;
+        }
+    }
+
+    // Marks a round closed with nobody buzzed, so a late buzz can't become the winner
+    private static final Buzz NO_WINNER = new Buzz(null, 0, 0);
+
+    private static final class Round {
+        final int id;
+        final AtomicReference<Buzz> first = new AtomicReference<>();
+        final Queue<Buzz> later = new ConcurrentLinkedQueue<>();
+        final AtomicLongArray seen;
+
+        Round(int id, int seats) {
+            this.id = id;
+            seen = new AtomicLongArray((seats + 63) >>> 6);
+        }
+    }
+
+    private volatile Round round = new Round(0, 0);
+
+    // Starts accepting buzzes for a new question from seats 0..seats-1
+    public void openRound(int seats) {
+        openRound(0, seats);
+    }
+
+    // Same, for the round with this id (never 0), which buzzes can name to be sure they count for it
+    public void openRound(int id, int seats) {
+        round = new Round(id, seats);
+    }
+
+    // Records a buzz; false if the round is closed, the seat is new this question, or it already buzzed
+    public boolean offer(ClientThread client, long arrivalNanos) {
+        return offer(client, 0, arrivalNanos, arrivalNanos);
+    }
+
+    // Same, for a buzz meant for round roundId (0 if it doesn't say) and estimated to have been
+    // sent at sentNanos; false also if it names a round that isn't the open one
+    public boolean offer(ClientThread client, int roundId, long arrivalNanos, long sentNanos) {
+        Round current = round;
+        if (roundId != 0 && roundId != current.id) return false;
+        if (current.first.get() == NO_WINNER) return false;
+        if (!markSeen(current, client.getSeat())) return false;
+
+        Buzz buzz = new Buzz(client, arrivalNanos, sentNanos);
+        if (current.first.compareAndSet(null, buzz)) return true;
+        if (current.first.get() == NO_WINNER) return false; // closed while we were racing
+        current.later.add(buzz);
+        return true;
+    }
+
+    // Stops the round and returns every buzz, earliest sent first, empty if nobody buzzed.
+    // A compensated buzz that arrived after the first one can still come out ahead of it
+    public List<Buzz> closeRound() {
+        Round current = round;
+        Buzz first = current.first.getAndSet(NO_WINNER);
+        if (first == null || first == NO_WINNER) return Collections.emptyList();
+
+        List<Buzz> ordered = new ArrayList<>(current.later.size() + 1);
+        ordered.add(first);
+        ordered.addAll(current.later);
+        ordered.sort(Comparator.comparingLong(Buzz::getSentNanos)); // stable: ties keep the first buzz first
+        return ordered;
+    }
+
+    private static boolean markSeen(Round round, int seat) {
+        int word = seat >>> 6;
+        if (seat < 0 || word >= round.seen.length()) return false;
+
+        long bit = 1L << seat;
+        long prev;
+        do {
+            prev = round.seen.get(word);
+            if ((prev & bit) != 0) return false;
+        } while (!round.seen.compareAndSet(word, prev, prev | bit));
+        return true;
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// The client's end of the UDP buzz protocol (see UdpBuzzReceiver): one DatagramChannel
+// connected to the server for the whole session, so a buzz is a single send with no
+// socket to open first. A ping every PING_MILLIS keeps a smoothed round trip, the way TCP
+// does, which is reported to the server with the next ping and sets how long to wait
+// for an ack. Each buzz gets a sequence number and is resent, backing off, until the
+// server acks it or MAX_ATTEMPTS have gone out. It also names the question it is for,
+// so a resend that reaches the server after that question is over is dropped there.
+public final class BuzzChannel implements Closeable {
+    private static final long PING_MILLIS = 2000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_RETRY_MICROS = 200_000; // until the first pong
+    private static final long MIN_RETRY_MICROS = 50_000;
+    private static final long MAX_RETRY_MICROS = 1_000_000;
+
+    private final DatagramChannel channel;
+    private final Supplier<String> token; // empty until the server sends one
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "buzz-channel");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong nextSeq = new AtomicLong(1);
+
+    private volatile long pendingBuzz;      // seq waiting for its ack, 0 if none
+    private volatile long pingSeq;          // the ping whose pong we're waiting for
+    private volatile long pingSentNanos;
+    private long smoothedMicros, deviationMicros; // round trip estimate, guarded by this; 0 until the first pong
+    private volatile int retransmits;
+
+    public BuzzChannel(InetAddress server, int port, Supplier<String> token) throws IOException {
+        this.token = token;
+        channel = DatagramChannel.open();
+        channel.connect(new InetSocketAddress(server, port));
+        Thread receiver = new Thread(this::receiveLoop, "buzz-channel-receive");
+        receiver.setDaemon(true);
+        receiver.start();
+        timers.scheduleAtFixedRate(this::ping, 0, PING_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Sends a buzz for the question round (see WireProtocol.questionRound, 0 if unknown)
+    // and keeps resending it until it is acked
+    public void buzz(int round) {
+        String session = token.get();
+        if (session.isEmpty()) {
+            // Without a token the server matches us by address and can't ack
+            send("buzz");
+            return;
+        }
+        long seq = nextSeq.getAndIncrement();
+        pendingBuzz = seq;
+        sendBuzz(session + " " + seq + (round > 0 ? " " + round : ""), seq, 1);
+    }
+
+    // Stops resending the last buzz, e.g. once the question it was for is over
+    public void cancelBuzz() {
+        pendingBuzz = 0;
+    }
+
+    // Smoothed round trip to the server in microseconds, 0 until measured
+    public synchronized long getRttMicros() {
+        return smoothedMicros;
+    }
+
+    public int getRetransmits() {
+        return retransmits;
+    }
+
+    // fields is "<token> <seq> [<round>]"
+    private void sendBuzz(String fields, long seq, int attempt) {
+        if (pendingBuzz != seq) return; // acked or replaced
+        if (attempt > 1) retransmits++;
+        send("buzz " + fields);
+        if (attempt < MAX_ATTEMPTS) {
+            long wait = Math.min(MAX_RETRY_MICROS, retryMicros() << (attempt - 1));
+            timers.schedule(() -> sendBuzz(fields, seq, attempt + 1), wait, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void ping() {
+        String session = token.get();
+        if (session.isEmpty()) return;
+        long seq = nextSeq.getAndIncrement();
+        long rtt = getRttMicros();
+        pingSeq = seq;
+        pingSentNanos = System.nanoTime();
+        send("ping " + session + " " + seq + (rtt > 0 ? " " + rtt : ""));
+    }
+
+    private void send(String packet) {
+        try {
+            channel.write(ByteBuffer.wrap(packet.getBytes(StandardCharsets.US_ASCII)));
+        } catch (IOException e) {
+            // lost, same as a dropped datagram; buzzes are resent
+        }
+    }
+
+    // "ack <seq>" and "pong <seq>" from the server
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                channel.read(buffer);
+                long now = System.nanoTime();
+                String[] parts = new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).trim().split(" ");
+                if (parts.length != 2) continue;
+                long seq = Long.parseLong(parts[1]);
+                if (parts[0].equals("ack") && seq == pendingBuzz) {
+                    pendingBuzz = 0;
+                } else if (parts[0].equals("pong") && seq == pingSeq) {
+                    pingSeq = 0;
+                    sample(TimeUnit.NANOSECONDS.toMicros(now - pingSentNanos));
+                }
+            } catch (PortUnreachableException e) {
+                // server not listening (yet); keep going
+            } catch (NumberFormatException e) {
+                // not for us
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    // Smoothed round trip and its mean deviation, as in TCP (RFC 6298)
+    private synchronized void sample(long rttMicros) {
+        if (smoothedMicros == 0) {
+            smoothedMicros = Math.max(1, rttMicros);
+            deviationMicros = rttMicros / 2;
+        } else {
+            deviationMicros = (3 * deviationMicros + Math.abs(smoothedMicros - rttMicros)) / 4;
+            smoothedMicros = Math.max(1, (7 * smoothedMicros + rttMicros) / 8);
+        }
+    }
+
+    private synchronized long retryMicros() {
+        if (smoothedMicros == 0) return INITIAL_RETRY_MICROS;
+        return Math.max(MIN_RETRY_MICROS, Math.min(MAX_RETRY_MICROS, smoothedMicros + 4 * deviationMicros));
+    }
+
+    @Override
+    public void close() {
+        timers.shutdownNow();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import java.net.InetAddress;
+
+//transport a ClientThread uses to talk to its player.
+//implemented by the blocking SocketConnection and by NioServerEngine's channels.
+public interface ClientConnection {
+
+    //queues or writes a single protocol line to the player
+    void send(String message);
+
+    //writes bytes that are already encoded and newline-terminated, shared across players
+    void sendFrame(byte[] frame);
+
+    //like sendFrame, but for periodic updates (timer ticks) that a newer one makes stale,
+    //so they may be dropped or coalesced when the player falls behind
+    void sendTick(byte[] frame);
+
+    //remote address, used to match UDP buzzes to players
+    InetAddress getInetAddress();
+
+    //releases the underlying socket
+    void close();
+}
@@ -0,0 +1,67 @@
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Every connected client, whichever room it is in, indexed for the lookups the
+// server does: by session token for UDP buzzes, by id for admin commands.
+public class ClientRegistry {
+    // Client id -> client; iterating values() is safe while clients join and leave
+    private final Map<Integer, ClientThread> clients = new ConcurrentHashMap<>();
+    // Session token (sent at Welcome, echoed in UDP buzzes) -> client, read without locking
+    private final Map<Long, ClientThread> sessions = new ConcurrentHashMap<>();
+
+    public void add(ClientThread client) {
+        clients.put(client.getClientID(), client);
+        sessions.put(client.getSessionToken(), client);
+    }
+
+    // False if the client was already removed
+    public boolean remove(ClientThread client) {
+        if (clients.remove(client.getClientID(), client)) {
+            sessions.remove(client.getSessionToken(), client);
+            return true;
+        }
+        // It resumed a session but isn't re-indexed yet, so it's still under its old keys
+        if (!clients.values().remove(client)) return false;
+        sessions.values().remove(client);
+        return true;
+    }
+
+    // Re-indexes a client whose id and session token changed (it resumed an earlier session),
+    // unless it was removed in the meantime
+    public void changeSession(ClientThread client, int oldId, long oldToken) {
+        if (clients.remove(oldId, client)) {
+            clients.put(client.getClientID(), client);
+        }
+        if (sessions.remove(oldToken, client)) {
+            sessions.put(client.getSessionToken(), client);
+        }
+    }
+
+    public boolean hasToken(long token) {
+        return sessions.containsKey(token);
+    }
+
+    public Collection<ClientThread> all() {
+        return clients.values();
+    }
+
+    // Constant-time lookup that also tells apart players behind the same NAT
+    public ClientThread findByToken(long token) {
+        return sessions.get(token);
+    }
+
+    // Linear scan by address, only used for legacy bare "buzz" packets
+    public ClientThread findByAddress(InetAddress address) {
+        for (ClientThread client : clients.values()) {
+            if (client.getInetAddress().equals(address)) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    public ClientThread findById(int id) {
+        return clients.get(id);
+    }
+}
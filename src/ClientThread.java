@@ -1,35 +1,51 @@
 import java.io.*;
 import java.net.*;
+import java.util.HexFormat;
 
 public class ClientThread implements Runnable {
-    private final Socket socket;
-    private final int clientID;
-    private BufferedReader in;
-    private PrintWriter out;
+    private final ClientConnection connection;
+    private volatile int clientID;      //both replaced when the player resumes an earlier session
+    private volatile long sessionToken;
+    private volatile long playerKey;    //the player's lasting identity, from "PLAYER <key>"; 0 if it sent none
     private String correctAnswer;
     private int score;
     private boolean canAnswer;
-    private boolean joinedMidGame = false;
+    private volatile boolean joinedMidGame = false;
+    private volatile GameRoom room;
+    private volatile int seat = -1; //index within the room, keys the room's buzz bitset
+    private volatile boolean deadlineTimers = false; //counts down locally from PHASE, no TIMER ticks
+    private volatile int udpRttMicros = 0; //round trip the player reports in its UDP pings, 0 until it does
+    //kept across rooms, so new decks skip them; shared by the player's connections once it sends its key,
+    //otherwise made when the player is first shown a question. null until then
+    private volatile SeenQuestions seenQuestions;
     private int unansweredCount = 0;
+    //this match so far, added to the player's lifetime stats when it ends
+    private int matchStartScore, matchCorrect, matchWrong, matchPenalties, matchBuzzes;
+    private long matchBuzzNanos;
+    //picking an encoding and queueing the bytes happen under this lock, so nothing
+    //queued as text can land after the switch to binary
+    private final Object sendLock = new Object();
+    private boolean binaryProtocol = false; //guarded by sendLock
 
-    //initializes client state 
-    public ClientThread(Socket socket, int id) {
-        this.socket = socket;
+    //initializes client state for the blocking thread-per-client engine
+    public ClientThread(Socket socket, int id) throws IOException {
+        this(new SocketConnection(socket), id);
+    }
+
+    //initializes client state on top of any transport (used by the NIO engine)
+    public ClientThread(ClientConnection connection, int id) {
+        this.connection = connection;
         this.clientID = id;
+        this.sessionToken = TriviaServer.newSessionToken();
         this.score = 0;
         this.canAnswer = false;
 
-        try {
-        	//set up input and output communication
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
-            
-            //send welcome and initial score
-            sendMessage("Welcome Client-" + clientID);
-            sendMessage("score " + score);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        //send welcome, the wire protocols we speak, the token the client puts in its
+        //UDP buzzes, and initial score
+        sendMessage("Welcome Client-" + clientID);
+        sendMessage(WireProtocol.ADVERTISE);
+        sendMessage("TOKEN " + HexFormat.of().toHexDigits(sessionToken));
+        send(WireProtocol.score(WireProtocol.SCORE, score));
     }
     //getters and setters
 
@@ -37,8 +53,16 @@ public class ClientThread implements Runnable {
         return clientID;
     }
 
-    public Socket getSocket() {
-        return socket;
+    public long getSessionToken() {
+        return sessionToken;
+    }
+
+    public long getPlayerKey() {
+        return playerKey;
+    }
+
+    public InetAddress getInetAddress() {
+        return connection.getInetAddress();
     }
 
     public int getScore() {
@@ -59,14 +83,182 @@ public class ClientThread implements Runnable {
 
     public void increaseScore(int points) {
         score += points;
+        scoreChanged();
     }
 
     public void decreaseScore(int points) {
         score -= points;
+        scoreChanged();
+    }
+
+    //what the player has done in its current match, kept with its session when it drops
+    public record MatchStats(int score, int correct, int wrong, int penalties, int buzzes, long buzzNanos) {
+    }
+
+    //starts counting a new match for the player's stats
+    public void resetMatchStats() {
+        matchStartScore = score;
+        matchCorrect = matchWrong = matchPenalties = matchBuzzes = 0;
+        matchBuzzNanos = 0;
+    }
+
+    //a buzz that counted, latencyNanos after the question went out
+    public void recordBuzz(long latencyNanos) {
+        matchBuzzes++;
+        matchBuzzNanos += latencyNanos;
+    }
+
+    public void recordPenalty() {
+        matchPenalties++;
+    }
+
+    public int getMatchScore() {
+        return score - matchStartScore;
+    }
+
+    public int getMatchCorrect() {
+        return matchCorrect;
+    }
+
+    public int getMatchWrong() {
+        return matchWrong;
+    }
+
+    public int getMatchPenalties() {
+        return matchPenalties;
+    }
+
+    public int getMatchBuzzes() {
+        return matchBuzzes;
+    }
+
+    public long getMatchBuzzNanos() {
+        return matchBuzzNanos;
+    }
+
+    public MatchStats getMatchStats() {
+        return new MatchStats(getMatchScore(), matchCorrect, matchWrong, matchPenalties, matchBuzzes, matchBuzzNanos);
+    }
+
+    //carries on counting a match the player dropped out of; the score must already be restored
+    public void restoreMatchStats(MatchStats stats) {
+        matchStartScore = score - stats.score();
+        matchCorrect = stats.correct();
+        matchWrong = stats.wrong();
+        matchPenalties = stats.penalties();
+        matchBuzzes = stats.buzzes();
+        matchBuzzNanos = stats.buzzNanos();
+    }
+
+    //keeps the room's live leaderboard in step with the score
+    private void scoreChanged() {
+        GameRoom current = room;
+        if (current != null) {
+            current.scoreChanged(this);
+        }
     }
 
     public void sendMessage(String message) {
-        out.println(message);
+        Metrics.MESSAGES_SENT.increment();
+        synchronized (sendLock) {
+            if (binaryProtocol) {
+                connection.sendFrame(WireProtocol.encodeText(message));
+            } else {
+                connection.send(message);
+            }
+        }
+    }
+
+    //sends a message encoded once for every player, in whichever protocol this one speaks
+    public void send(WireProtocol.Message message) {
+        Metrics.MESSAGES_SENT.increment();
+        synchronized (sendLock) {
+            connection.sendFrame(message.encoded(binaryProtocol));
+        }
+    }
+
+    //sends a timer tick that may be dropped if this player is falling behind
+    public void sendTick(WireProtocol.Message tick) {
+        Metrics.MESSAGES_SENT.increment();
+        synchronized (sendLock) {
+            connection.sendTick(tick.encoded(binaryProtocol));
+        }
+    }
+
+    public boolean usesDeadlineTimers() {
+        return deadlineTimers;
+    }
+
+    public int getUdpRttMicros() {
+        return udpRttMicros;
+    }
+
+    public void setUdpRttMicros(int micros) {
+        udpRttMicros = micros;
+    }
+
+    public boolean usesBinaryProtocol() {
+        synchronized (sendLock) {
+            return binaryProtocol;
+        }
+    }
+
+    //answers a "PROTOCOL ..." request; the reply is the last text line before binary frames
+    private void negotiateProtocol(String request) {
+        synchronized (sendLock) {
+            if (request.equals(WireProtocol.BINARY)) {
+                connection.send(WireProtocol.BINARY);
+                binaryProtocol = true;
+            } else {
+                connection.send(binaryProtocol ? WireProtocol.BINARY : WireProtocol.TEXT_ONLY);
+            }
+        }
+    }
+
+    //takes over a session the player had before reconnecting: its id, token, score and match stats.
+    //runs on a room's loop; the caller brings that room's leaderboard up to date
+    public void adoptSession(SessionTable.Session session) {
+        clientID = session.clientId;
+        sessionToken = session.token;
+        score = session.score;
+        if (session.match != null) {
+            restoreMatchStats(session.match);
+        } else {
+            resetMatchStats(); //nothing kept, e.g. restored from a snapshot: count from here
+        }
+        if (session.seen != null && playerKey == 0) {
+            seenQuestions = session.seen; //a keyed player already has its own
+        }
+        sendMessage("Welcome Client-" + clientID);
+        sendMessage("TOKEN " + HexFormat.of().toHexDigits(sessionToken));
+        send(WireProtocol.score(WireProtocol.SCORE, score));
+    }
+
+    //null if the player hasn't been shown anything yet
+    public SeenQuestions getSeenQuestions() {
+        return seenQuestions;
+    }
+
+    //remembers a question the player was shown, so later decks skip it
+    public void markSeen(long questionId) {
+        SeenQuestions seen = seenQuestions;
+        if (seen == null) {
+            seenQuestions = seen = new SeenQuestions(TriviaServer.getQuestionCount());
+        }
+        seen.add(questionId);
+    }
+
+    public GameRoom getRoom() {
+        return room;
+    }
+
+    public void setRoom(GameRoom room, int seat) {
+        this.room = room;
+        this.seat = seat;
+    }
+
+    public int getSeat() {
+        return seat;
     }
 
     public void setJoinedMidGame(boolean joined) {
@@ -90,14 +282,8 @@ public class ClientThread implements Runnable {
     }
     //close this client's resources
     public void close() {
-        try {
-            if (in != null) in.close();
-            if (out != null) out.close();
-            if (socket != null) socket.close();
-            System.out.println("Client-" + clientID + " disconnected.");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        connection.close();
+        if (Log.event()) Log.info("Client-" + clientID + " disconnected.");
     }
 
     //evaluates and processes a submitted answer
@@ -111,72 +297,159 @@ public class ClientThread implements Runnable {
         resetUnansweredCount();//reset missed question count since the player responded
         
         //check correctness
-        if (trimmed.equals(correctAnswer)) {
+        boolean right = trimmed.equals(correctAnswer);
+        if (right) {
+            matchCorrect++;
             increaseScore(10);
-            sendMessage("correct " + score);
-            System.out.println("Client-" + clientID + " answered correctly.");
+            send(WireProtocol.score(WireProtocol.CORRECT, score));
+            if (Log.event()) Log.info("Client-" + clientID + " answered correctly.");
         } else {
+            matchWrong++;
             decreaseScore(10);
-            sendMessage("wrong " + score);
-            System.out.println("Client-" + clientID + " answered incorrectly.");
+            send(WireProtocol.score(WireProtocol.WRONG, score));
+            if (Log.event()) Log.info("Client-" + clientID + " answered incorrectly.");
         }
 
         canAnswer = false; //client used their turn
+        GameJournal.answer(room.getName(), clientID, trimmed, right, score);
 
         //move on to next question
         try {
-            TriviaServer.moveAllToNextQuestion();
+            room.moveAllToNextQuestion();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    //main client thread logic
+    //handles one line received from the player, shared by both server engines
+    public void handleMessage(String message) throws IOException {
+        Metrics.MESSAGES_RECEIVED.increment();
+
+        //player picked a room, e.g. "JOIN friday-night"
+        if (message.startsWith("JOIN ")) {
+            TriviaServer.moveToRoom(this, message.substring(5).trim());
+            return;
+        }
+
+        //reconnecting player taking back its session, e.g. "RESUME 3f9c0a..."
+        if (message.startsWith("RESUME ")) {
+            try {
+                TriviaServer.resumeSession(this, Long.parseUnsignedLong(message.substring(7).trim(), 16));
+            } catch (NumberFormatException e) {
+                sendMessage("RESUME_FAILED");
+            }
+            return;
+        }
+
+        //client's lasting player key, kept on its disk, e.g. "PLAYER 5be1c0f2..."
+        if (message.startsWith("PLAYER ")) {
+            try {
+                long key = Long.parseUnsignedLong(message.substring(7).trim(), 16);
+                if (key != 0) {
+                    playerKey = key;
+                    seenQuestions = TriviaServer.seenQuestionsFor(key);
+                }
+            } catch (NumberFormatException e) {
+                //malformed key, the player stays anonymous
+            }
+            return;
+        }
+
+        //lifetime stats, e.g. for the lobby: "STATS" -> "STATS games=3 correct=5 ..."
+        if (message.equals("STATS")) {
+            sendMessage(PlayerStats.describe(playerKey));
+            return;
+        }
+
+        //client picked a wire protocol after our Welcome, e.g. "PROTOCOL binary/1"
+        if (message.startsWith("PROTOCOL ")) {
+            negotiateProtocol(message);
+            return;
+        }
+
+        //client renders countdowns itself from one PHASE message per phase
+        if (message.equals(WireProtocol.DEADLINES)) {
+            deadlineTimers = true;
+            return;
+        }
+
+        //clock probe for offset estimation, e.g. "CLOCK 1760000000000"
+        if (message.startsWith("CLOCK ")) {
+            try {
+                long clientMillis = Long.parseLong(message.substring(6).trim());
+                send(WireProtocol.clock(clientMillis, System.currentTimeMillis()));
+            } catch (NumberFormatException e) {
+                //malformed probe, nothing to answer
+            }
+            return;
+        }
+
+        //answers and timeouts change the game, so they run on the room's loop in arrival order
+        GameRoom current = room;
+        if (current == null) return;
+        current.post(() -> playMessage(current, message));
+    }
+
+    //runs on the room's loop; the player may have moved rooms since the message arrived
+    private void playMessage(GameRoom current, String message) {
+        if (room != current) return;
+
+        //players who joined mid game sit out until the next question is sent
+        if (joinedMidGame) {
+            return;
+        }
+
+        if (Log.event()) Log.info("Client-" + clientID + ": " + message);
+
+        //handle timeout message
+        //could delete since its being dealt in server side now?
+        //only the player holding the answer turn can run out of it and move the game on
+        if (message.equalsIgnoreCase("Expired")) {
+            if (canAnswer) {
+                canAnswer = false;
+                decreaseScore(20);
+                recordPenalty();
+                //unansweredCount++;
+                send(WireProtocol.score(WireProtocol.PENALTY, score));
+                GameJournal.penalty(current.getName(), clientID, score);
+                if (Log.event()) Log.info("Client-" + clientID + " did not answer. -20 points.");
+
+                //kick client after 2 missed answers 
+//                if (unansweredCount >= 2) {
+//                    sendMessage("You have been removed for not answering twice.");
+//                    System.out.println("Client-" + clientID + " kicked for inactivity.");
+//                    TriviaServer.removeClient(this);
+//                    close();
+//                    return;
+//                }
+
+                //let the room handle timeout logic
+                try {
+                    current.clientOutOfTime(this);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        //handle regular answer submission
+        else {
+            checkAnswer(message);
+        }
+    }
+
+    //main client thread logic, only used by the blocking engine
     @Override
     public void run() {
+        SocketConnection socketConnection = (SocketConnection) connection;
         try {
-        	//handle clients who join mid game by making them wait
-            if (joinedMidGame) {
-                sendMessage("WaitForNextRound");
-                int waitAt = TriviaServer.getCurrentQuestionIndex();
-                while (TriviaServer.getCurrentQuestionIndex() == waitAt) {
-                    Thread.sleep(800);
-                }
-                joinedMidGame = false; //done waiting
-            }
+            //mid-game joiners keep reading (so they can still JOIN another room);
+            //handleMessage ignores their answers until the room sends the next question
 
             //continously listens for input from client
             String message;
-            while ((message = in.readLine()) != null) {
-                System.out.println("Client-" + clientID + ": " + message);
-
-                //handle timeout message
-                //could delete since its being dealt in server side now?
-                if (message.equalsIgnoreCase("Expired")) {
-                    if (canAnswer) {
-                        canAnswer = false;
-                        score -= 20;
-                        //unansweredCount++;
-                        sendMessage("noAnswerPenalty " + score);
-                        System.out.println("Client-" + clientID + " did not answer. -20 points.");
-
-                        //kick client after 2 missed answers 
-//                        if (unansweredCount >= 2) {
-//                            sendMessage("You have been removed for not answering twice.");
-//                            System.out.println("Client-" + clientID + " kicked for inactivity.");
-//                            TriviaServer.removeClient(this);
-//                            close();
-//                            return;
-//                        }
-                    }
-                    //let the server handle timeout logic
-                    TriviaServer.clientOutOfTime(this);
-                }
-
-                //handle regular answer submission
-                else {
-                    checkAnswer(message);
-                }
+            while ((message = socketConnection.readLine()) != null) {
+                handleMessage(message);
             }
 
             // readline returned null - client disconnected
@@ -185,8 +458,8 @@ public class ClientThread implements Runnable {
             TriviaServer.removeClient(this);
         
 
-        } catch (IOException | InterruptedException e) {
-            System.out.println("Client-" + clientID + " disconnected (exception).");
+        } catch (IOException e) {
+            if (Log.event()) Log.info("Client-" + clientID + " disconnected (exception).");
             try {
                 TriviaServer.removeClient(this);
                 close();
@@ -2,33 +2,68 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
 
 import javax.swing.*;
 
-public class ClientWindow implements ActionListener {
+public class ClientWindow implements ActionListener, WireProtocol.Listener {
     private int userScore = 0;
     private JButton poll, submit;
     private JRadioButton[] options;
     private ButtonGroup optionGroup;
-    private JLabel question, timer, score, gameMessage;
+    private JLabel question, timer, score, gameMessage, standings;
     private JFrame window;
 
     private Socket socket;
-    private BufferedReader in;
+    private WireProtocol.Reader reader; // text lines, then binary frames once negotiated
     private PrintWriter out;
     private String selectedAnswer = "";
+    private volatile String sessionToken = ""; // sent by the server at Welcome, identifies our buzzes
+    private BuzzChannel buzzChannel;           // kept open for the whole session
+    private volatile int questionRound;        // named in our buzzes, see WireProtocol.questionRound
+    private static final int UDP_PORT = 1235;
+    // Who we are across connections and restarts, so the server can keep our lifetime stats
+    private static final Path PLAYER_KEY_FILE = Paths.get(System.getProperty("user.home"), ".trivia-player");
+    private final String playerKey = loadPlayerKey();
+
+    // Local countdown for the current phase, driven by the deadline in the server's PHASE message
+    private static final int CLOCK_PROBES = 3;
+    private static final int RECONNECT_SECONDS = 120;      // how long to keep trying after losing the server
+    private static final int RECONNECT_FIRST_RETRY_MILLIS = 50; // first try is immediate, then back off
+    private static final int RECONNECT_MAX_RETRY_MILLIS = 500;
+    private volatile boolean gameOver;
+    private volatile int myRank, rankedPlayers; // 0 until the server first ranks us
+    private javax.swing.Timer countdown;
+    private volatile long phaseDeadline;         // on our clock
+    private volatile long clockOffset = 0;       // server clock minus ours, in ms
+    private volatile long bestClockRtt = Long.MAX_VALUE;
 
     // Constructor that initializes the GUI and connects to the server
     public ClientWindow(String serverIP, int port) {
+        this(serverIP, port, null);
+    }
+
+    // Same as above, but asks the server for a specific room (null or blank = any room)
+    public ClientWindow(String serverIP, int port, String room) {
         window = new JFrame("Trivia Game");
         window.setSize(400, 400);
         window.setLayout(null);
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         window.setResizable(false);
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                disconnect();
+            }
+        });
 
         // Question label
         question = new JLabel("Waiting for question...");
@@ -56,12 +91,18 @@ public class ClientWindow implements ActionListener {
         timer = new JLabel("Timer");
         timer.setBounds(250, 250, 100, 20);
         window.add(timer);
+        countdown = new javax.swing.Timer(200, e -> renderCountdown());
 
         // Message label to display game status
         gameMessage = new JLabel("");
         gameMessage.setBounds(10, 220, 350, 20);
         window.add(gameMessage);
 
+        // Live leaderboard: our rank and the leaders
+        standings = new JLabel("");
+        standings.setBounds(10, 330, 380, 20);
+        window.add(standings);
+
         // Poll button to buzz in
         poll = new JButton("Poll");
         poll.setBounds(10, 300, 100, 20);
@@ -81,14 +122,40 @@ public class ClientWindow implements ActionListener {
         // Connect to server and start listener thread
         try {
             socket = new Socket(serverIP, port);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            reader = new WireProtocol.Reader(socket.getInputStream());
+            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            out.println("PLAYER " + playerKey);
+            if (room != null && !room.isBlank()) {
+                out.println("JOIN " + room.trim());
+            }
+            buzzChannel = new BuzzChannel(socket.getInetAddress(), UDP_PORT, () -> sessionToken);
             new Thread(this::listenToServer).start();
         } catch (IOException e) {
             JOptionPane.showMessageDialog(null, "Could not connect to server.");
         }
     }
     
+    // Our player key from PLAYER_KEY_FILE, made and saved on first run
+    private static String loadPlayerKey() {
+        try {
+            String saved = Files.readString(PLAYER_KEY_FILE).trim();
+            if (Long.parseUnsignedLong(saved, 16) != 0) return saved;
+        } catch (IOException | NumberFormatException e) {
+            // first run, or the file is damaged: make a new key
+        }
+        long key;
+        do {
+            key = new SecureRandom().nextLong();
+        } while (key == 0);
+        String hex = HexFormat.of().toHexDigits(key);
+        try {
+            Files.writeString(PLAYER_KEY_FILE, hex);
+        } catch (IOException e) {
+            System.out.println("Could not save player key, stats won't follow you to your next game: " + e.getMessage());
+        }
+        return hex;
+    }
+
     private String getClientIDFromTitle() {
         String title = window.getTitle();  // "Trivia Server: Client-0"
         int idx = title.lastIndexOf("Client-");
@@ -97,128 +164,333 @@ public class ClientWindow implements ActionListener {
 
     // Listens to server messages and updates GUI accordingly
     private void listenToServer() {
-        try {
-            String line;
-            while ((line = in.readLine()) != null) {
-                if (line.startsWith("Welcome Client-")) {
-                    updateGameMessage(line, Color.BLUE);
-                    final String titleText = line.replace("Welcome ", "");
-                    SwingUtilities.invokeLater(() -> window.setTitle("Trivia Server: " + titleText));
-                } else if (line.startsWith("Question")) {
-                    // Read and display full question with options
-                    StringBuilder fullQuestion = new StringBuilder(line).append("\n");
-                    for (int i = 0; i < 5; i++) {
-                        String nextLine = in.readLine();
-                        if (nextLine != null) fullQuestion.append(nextLine).append("\n");
-                    }
-                    displayQuestion(fullQuestion.toString());
-                } else if (line.startsWith("Your Answer")) {
-                    SwingUtilities.invokeLater(() -> poll.setEnabled(true));
-                } else if (line.startsWith("ACK")) {
-                    // Client won the buzz
-                    SwingUtilities.invokeLater(() -> {
-                        gameMessage.setText("You won the buzz! You may answer.");
-                        poll.setEnabled(false);
-                        submit.setEnabled(true);
-                        for (JRadioButton option : options) option.setEnabled(true);
-                    });
-                } else if (line.startsWith("NAK")) {
-                    // Another client buzzed first
-                    SwingUtilities.invokeLater(() -> {
-                        gameMessage.setText("Too late! Another player buzzed first.");
-                        poll.setEnabled(false);
-                        submit.setEnabled(false);
-                        for (JRadioButton option : options) option.setEnabled(false);
-                    });
-                } else if (line.startsWith("TIMER:")) {
-                    // Update timer label
-                    String time = line.split(":")[1];
-                    SwingUtilities.invokeLater(() -> {
-                        int seconds = Integer.parseInt(time);
-                        timer.setForeground(seconds < 6 ? Color.RED : Color.BLACK);
-                        timer.setText("Time: " + seconds);
-                    });
-                } else if (line.equals("UNLOCK_POLL")) {
-                    SwingUtilities.invokeLater(() -> poll.setEnabled(true));
-                } else if (line.toLowerCase().startsWith("correct")) {
-                    userScore += 10;
-                    updateGameMessage("Correct answer! +10 points", Color.GREEN);
-                } else if (line.toLowerCase().startsWith("wrong")) {
-                    userScore -= 10;
-                    updateGameMessage("Wrong answer! -10 points", Color.RED);
-                } else if (line.toLowerCase().startsWith("noanswerpenalty")) {
-                    userScore -= 20;
-                    updateGameMessage("You did not answer in time. -20 points", Color.RED);
-                } else if (line.contains("WaitForNextRound")) {
-                    updateGameMessage("You joined mid-game. Wait for the next question.", Color.BLUE);
-                    disableControls();
-                } else if (line.startsWith("FINAL_SCORE:")) {
-                    try {
-                        userScore = Integer.parseInt(line.split(":")[1].trim());
-                        SwingUtilities.invokeLater(() -> {
-                            score.setText("Score: " + userScore);
-                            disableControls();
-                        });
-                    } catch (NumberFormatException ex) {
-                        System.out.println("Failed to parse FINAL_SCORE line: " + line);
-                    }
-                } else if (line.equalsIgnoreCase("KILLSWITCH")) {
-                    SwingUtilities.invokeLater(() -> {
-                        JOptionPane.showMessageDialog(null, "You have been removed from the game.");
-                        System.exit(0);
-                    });
-                } else if (line.equals("not_enough_players")) {
-                    SwingUtilities.invokeLater(() -> {
-                        JOptionPane.showMessageDialog(null,
-                            "Not enough players joined.\nThe game cannot start.",
-                            "Game Cancelled",
-                            JOptionPane.WARNING_MESSAGE);
-                        System.exit(0);
-                    });
-                } else if (line.startsWith("SCOREBOARD|")) {
-                    String rawData = line.substring("SCOREBOARD|".length());
-
-                    // Split into entries like Client-0:30;Client-1:10
-                    String[] entries = rawData.split(";");
-                    Map<String, Integer> scores = new HashMap<>();
-
-                    for (String entry : entries) {
-                        if (!entry.isEmpty()) {
-                            String[] parts = entry.split(":");
-                            scores.put(parts[0], Integer.parseInt(parts[1]));
-                        }
-                    }
-
-                    // Sort by score descending
-                    List<Map.Entry<String, Integer>> sorted = new ArrayList<>(scores.entrySet());
-                    sorted.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
-
-                    // Build message
-                    StringBuilder msg = new StringBuilder();
-                    msg.append("Final Scoreboard:\n\n");
-
-                    boolean youWon = false;
-                    String yourLabel = getClientIDFromTitle(); // helper function
-
-                    for (int i = 0; i < sorted.size(); i++) {
-                        Map.Entry<String, Integer> entry = sorted.get(i);
-                        msg.append(String.format("%2d. %s: %d pts\n", i + 1, entry.getKey(), entry.getValue()));
-
-                        if (i == 0 && entry.getKey().equals(yourLabel)) {
-                            youWon = true;
-                        }
-                    }
-
-                    msg.append("\n");
-                    msg.append(youWon ? "You won!" : "You lost. Better luck next time!");
-
-                    JOptionPane.showMessageDialog(window, msg.toString(), "Game Over", JOptionPane.INFORMATION_MESSAGE);
+        while (true) {
+            try {
+                while (reader.read(this)) {
+                    // each message is handled by the callbacks below
                 }
+            } catch (IOException e) {
+                System.out.println("Disconnected from server.");
+            }
+            if (gameOver || sessionToken.isEmpty() || !reconnect()) break;
+        }
+        disconnect();
+    }
 
+    // Done with the server: closes the game connection and the UDP buzz channel
+    private void disconnect() {
+        BuzzChannel channel = buzzChannel;
+        if (channel != null) {
+            channel.close();
+        }
+        try {
+            if (socket != null) {
+                socket.close();
             }
         } catch (IOException e) {
-            System.out.println("Disconnected from server.");
+            // closing anyway
+        }
+    }
+
+    // Server went away mid-game: retry until it is back, then ask for our session again
+    private boolean reconnect() {
+        updateGameMessage("Lost the server, reconnecting...", Color.RED);
+        disableControls();
+        InetAddress serverAddress = socket.getInetAddress();
+        int port = socket.getPort();
+        long giveUp = System.currentTimeMillis() + RECONNECT_SECONDS * 1000L;
+        int retryMillis = RECONNECT_FIRST_RETRY_MILLIS;
+        while (System.currentTimeMillis() < giveUp) {
+            try {
+                Socket resumed = new Socket(serverAddress, port);
+                reader = new WireProtocol.Reader(resumed.getInputStream());
+                out = new PrintWriter(new OutputStreamWriter(resumed.getOutputStream(), StandardCharsets.UTF_8), true);
+                socket = resumed;
+                out.println("PLAYER " + playerKey);
+                out.println("RESUME " + sessionToken);
+                updateGameMessage("Reconnected, the game resumes shortly.", Color.BLUE);
+                return true;
+            } catch (IOException e) {
+                // server not back yet
+            }
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            retryMillis = Math.min(RECONNECT_MAX_RETRY_MILLIS, retryMillis * 2);
+        }
+        updateGameMessage("Could not reconnect to the server.", Color.RED);
+        return false;
+    }
+
+    // Text protocol lines, and TEXT frames once we've switched to binary
+    @Override
+    public void onLine(String line) {
+        if (line.startsWith("Welcome Client-")) {
+            updateGameMessage(line, Color.BLUE);
+            final String titleText = line.replace("Welcome ", "");
+            SwingUtilities.invokeLater(() -> window.setTitle("Trivia Server: " + titleText));
+        } else if (line.startsWith("PROTOCOLS ")) {
+            // Server speaks the binary protocol too, ask for it
+            if (line.contains(WireProtocol.BINARY.substring("PROTOCOL ".length()))) {
+                out.println(WireProtocol.BINARY);
+            }
+            // Server can send phase deadlines instead of ticks; sync clocks and count down ourselves
+            if (line.contains(" deadlines")) {
+                out.println(WireProtocol.DEADLINES);
+                for (int i = 0; i < CLOCK_PROBES; i++) {
+                    out.println("CLOCK " + System.currentTimeMillis());
+                }
+            }
+        } else if (line.equals(WireProtocol.BINARY)) {
+            // Everything after this line arrives as binary frames
+            reader.switchToBinary();
+        } else if (line.startsWith("TOKEN ")) {
+            sessionToken = line.substring("TOKEN ".length()).trim();
+        } else if (line.equals("RESUME_FAILED")) {
+            updateGameMessage("Your earlier game could not be resumed.", Color.RED);
+        } else if (line.startsWith("QUESTION|")) {
+            // Whole question arrives as one frame: QUESTION|number|text|A|B|C|D
+            String[] parts = line.split("\\|", 7);
+            if (parts.length == 7) {
+                onQuestion(parts[1], parts[2], Arrays.copyOfRange(parts, 3, 7));
+            }
+        } else if (line.startsWith("ACK")) {
+            onAck();
+        } else if (line.startsWith("NAK")) {
+            onNak();
+        } else if (line.startsWith("TIMER:")) {
+            onTimer(Integer.parseInt(line.split(":")[1]));
+        } else if (line.startsWith("PHASE ")) {
+            // PHASE name seconds deadlineMillis
+            String[] parts = line.split(" ");
+            onPhase(parts[1], Integer.parseInt(parts[2]), Long.parseLong(parts[3]));
+        } else if (line.startsWith("CLOCK ")) {
+            String[] parts = line.split(" ");
+            onClock(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } else if (line.equals("UNLOCK_POLL")) {
+            SwingUtilities.invokeLater(() -> poll.setEnabled(true));
+        } else if (line.startsWith("score ")) {
+            // Our score as the server has it, e.g. after resuming a session
+            onScore(WireProtocol.SCORE, Integer.parseInt(line.substring("score ".length()).trim()));
+        } else if (line.toLowerCase().startsWith("correct")) {
+            onScore(WireProtocol.CORRECT, userScore + 10);
+        } else if (line.toLowerCase().startsWith("wrong")) {
+            onScore(WireProtocol.WRONG, userScore - 10);
+        } else if (line.toLowerCase().startsWith("noanswerpenalty")) {
+            onScore(WireProtocol.PENALTY, userScore - 20);
+        } else if (line.startsWith("ROOM_UNAVAILABLE ")) {
+            updateGameMessage("Room " + line.substring("ROOM_UNAVAILABLE ".length()) + " is full or over.", Color.RED);
+        } else if (line.contains("WaitForNextRound")) {
+            updateGameMessage("You joined mid-game. Wait for the next question.", Color.BLUE);
+            disableControls();
+        } else if (line.startsWith("FINAL_SCORE:")) {
+            try {
+                onFinalScore(Integer.parseInt(line.split(":")[1].trim()));
+            } catch (NumberFormatException ex) {
+                System.out.println("Failed to parse FINAL_SCORE line: " + line);
+            }
+        } else if (line.equalsIgnoreCase("KILLSWITCH")) {
+            SwingUtilities.invokeLater(() -> {
+                JOptionPane.showMessageDialog(null, "You have been removed from the game.");
+                System.exit(0);
+            });
+        } else if (line.equals("not_enough_players")) {
+            SwingUtilities.invokeLater(() -> {
+                JOptionPane.showMessageDialog(null,
+                    "Not enough players joined.\nThe game cannot start.",
+                    "Game Cancelled",
+                    JOptionPane.WARNING_MESSAGE);
+                System.exit(0);
+            });
+        } else if (line.startsWith("STANDINGS|")) {
+            // Entries like 1:Client-0:30;2:Client-3:20
+            String[] entries = line.substring("STANDINGS|".length()).split(";");
+            List<int[]> parsed = new ArrayList<>();
+            for (String entry : entries) {
+                String[] parts = entry.split(":");
+                if (parts.length == 3) {
+                    parsed.add(new int[] {Integer.parseInt(parts[0]),
+                            Integer.parseInt(parts[1].substring("Client-".length())), Integer.parseInt(parts[2])});
+                }
+            }
+            int[] ranks = new int[parsed.size()], ids = new int[parsed.size()], points = new int[parsed.size()];
+            for (int i = 0; i < parsed.size(); i++) {
+                ranks[i] = parsed.get(i)[0];
+                ids[i] = parsed.get(i)[1];
+                points[i] = parsed.get(i)[2];
+            }
+            onStandings(ranks, ids, points);
+        } else if (line.startsWith("RANK ")) {
+            String[] parts = line.split(" ");
+            onRank(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } else if (line.startsWith("SCOREBOARD|")) {
+            String rawData = line.substring("SCOREBOARD|".length());
+
+            // Split into entries like Client-0:30;Client-1:10, already ranked
+            String[] entries = rawData.split(";");
+            Map<String, Integer> scores = new LinkedHashMap<>();
+
+            for (String entry : entries) {
+                if (!entry.isEmpty()) {
+                    String[] parts = entry.split(":");
+                    scores.put(parts[0], Integer.parseInt(parts[1]));
+                }
+            }
+            showScoreboard(scores);
+        }
+    }
+
+    @Override
+    public void onTimer(int seconds) {
+        // Update timer label
+        SwingUtilities.invokeLater(() -> {
+            timer.setForeground(seconds < 6 ? Color.RED : Color.BLACK);
+            timer.setText("Time: " + seconds);
+        });
+    }
+
+    @Override
+    public void onPhase(String name, int seconds, long deadlineMillis) {
+        phaseDeadline = deadlineMillis - clockOffset;
+        SwingUtilities.invokeLater(() -> {
+            renderCountdown();
+            countdown.start();
+        });
+    }
+
+    @Override
+    public void onClock(long clientMillis, long serverMillis) {
+        // Assume the server stamped its reply halfway through the round trip,
+        // and trust the probe with the shortest round trip most
+        long now = System.currentTimeMillis();
+        long rtt = now - clientMillis;
+        if (rtt >= 0 && rtt < bestClockRtt) {
+            bestClockRtt = rtt;
+            clockOffset = serverMillis - (clientMillis + now) / 2;
+        }
+    }
+
+    // Redraws the timer label from the phase deadline; runs on the Swing thread
+    private void renderCountdown() {
+        long left = phaseDeadline - System.currentTimeMillis();
+        int seconds = (int) Math.max(0, (left + 999) / 1000);
+        timer.setForeground(seconds < 6 ? Color.RED : Color.BLACK);
+        timer.setText("Time: " + seconds);
+        if (seconds == 0) {
+            countdown.stop();
+        }
+    }
+
+    @Override
+    public void onQuestion(String number, String text, String[] choices) {
+        buzzChannel.cancelBuzz(); // a buzz still unacked was for the previous question
+        questionRound = WireProtocol.questionRound(number);
+        if (choices.length == 4) {
+            displayQuestion(number, text, choices);
+        }
+    }
+
+    @Override
+    public void onAck() {
+        // Client won the buzz
+        SwingUtilities.invokeLater(() -> {
+            gameMessage.setText("You won the buzz! You may answer.");
+            poll.setEnabled(false);
+            submit.setEnabled(true);
+            for (JRadioButton option : options) option.setEnabled(true);
+        });
+    }
+
+    @Override
+    public void onNak() {
+        // Another client buzzed first
+        SwingUtilities.invokeLater(() -> {
+            gameMessage.setText("Too late! Another player buzzed first.");
+            poll.setEnabled(false);
+            submit.setEnabled(false);
+            for (JRadioButton option : options) option.setEnabled(false);
+        });
+    }
+
+    @Override
+    public void onScore(int kind, int newScore) {
+        userScore = newScore;
+        switch (kind) {
+            case WireProtocol.CORRECT -> updateGameMessage("Correct answer! +10 points", Color.GREEN);
+            case WireProtocol.WRONG -> updateGameMessage("Wrong answer! -10 points", Color.RED);
+            case WireProtocol.PENALTY -> updateGameMessage("You did not answer in time. -20 points", Color.RED);
+            default -> SwingUtilities.invokeLater(() -> score.setText("Score: " + userScore));
+        }
+    }
+
+    @Override
+    public void onFinalScore(int finalScore) {
+        gameOver = true;
+        userScore = finalScore;
+        SwingUtilities.invokeLater(() -> {
+            score.setText("Score: " + userScore);
+            disableControls();
+        });
+    }
+
+    @Override
+    public void onScoreboard(int[] clientIds, int[] scores) {
+        Map<String, Integer> byClient = new LinkedHashMap<>();
+        for (int i = 0; i < clientIds.length; i++) {
+            byClient.put("Client-" + clientIds[i], scores[i]);
+        }
+        showScoreboard(byClient);
+    }
+
+    @Override
+    public void onStandings(int[] ranks, int[] clientIds, int[] scores) {
+        // The first few leaders fit on one line
+        StringBuilder leaders = new StringBuilder();
+        for (int i = 0; i < Math.min(3, clientIds.length); i++) {
+            leaders.append(i == 0 ? "Leaders: " : ", ")
+                   .append(ranks[i]).append(". Client-").append(clientIds[i]).append(' ').append(scores[i]);
         }
+        String text = leaders.toString();
+        SwingUtilities.invokeLater(() -> standings.setText(text));
+    }
+
+    @Override
+    public void onRank(int rank, int players) {
+        myRank = rank;
+        rankedPlayers = players;
+        SwingUtilities.invokeLater(() -> score.setText("Score: " + userScore + " (#" + rank + ")"));
+    }
+
+    // Shows the final standings and whether we won
+    private void showScoreboard(Map<String, Integer> scores) {
+        // The server sends the top players already ranked
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(scores.entrySet());
+
+        // Build message
+        StringBuilder msg = new StringBuilder();
+        msg.append("Final Scoreboard:\n\n");
+
+        boolean youWon = false;
+        String yourLabel = getClientIDFromTitle(); // helper function
+
+        for (int i = 0; i < sorted.size(); i++) {
+            Map.Entry<String, Integer> entry = sorted.get(i);
+            msg.append(String.format("%2d. %s: %d pts\n", i + 1, entry.getKey(), entry.getValue()));
+
+            if (i == 0 && entry.getKey().equals(yourLabel)) {
+                youWon = true;
+            }
+        }
+
+        msg.append("\n");
+        if (myRank > 0) {
+            msg.append("You finished #").append(myRank).append(" of ").append(rankedPlayers).append(".\n");
+        }
+        msg.append(youWon ? "You won!" : "You lost. Better luck next time!");
+
+        JOptionPane.showMessageDialog(window, msg.toString(), "Game Over", JOptionPane.INFORMATION_MESSAGE);
     }
 
     // Updates game message label with color and message
@@ -240,13 +512,11 @@ public class ClientWindow implements ActionListener {
     }
 
     // Displays a new question and resets UI components
-    private void displayQuestion(String fullText) {
+    private void displayQuestion(String number, String text, String[] choices) {
         SwingUtilities.invokeLater(() -> {
-            String[] lines = fullText.split("\n");
-            if (lines.length < 6) return;
-            question.setText("<html><b>" + lines[0] + "</b><br>" + lines[1] + "</html>");
+            question.setText("<html><b>" + number + ":</b><br>" + text + "</html>");
             for (int i = 0; i < 4; i++) {
-                options[i].setText(lines[i + 2]);
+                options[i].setText((char) ('A' + i) + ". " + choices[i]);
                 options[i].setEnabled(false);
                 options[i].setSelected(false);
             }
@@ -257,18 +527,9 @@ public class ClientWindow implements ActionListener {
         });
     }
 
-    // Sends a UDP buzz packet to the server
+    // Sends a UDP buzz to the server, resent until the server acks it
     private void sendUDPBuzz() {
-        try {
-            byte[] buffer = "buzz".getBytes();
-            DatagramSocket udpSocket = new DatagramSocket();
-            InetAddress serverAddress = socket.getInetAddress();
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, 1235);
-            udpSocket.send(packet);
-            udpSocket.close();
-        } catch (IOException e) {
-            System.out.println("UDP Buzz failed");
-        }
+        buzzChannel.buzz(questionRound);
     }
 
     // Handles user actions from GUI components
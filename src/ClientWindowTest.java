@@ -3,8 +3,9 @@ import javax.swing.JOptionPane;
 public class ClientWindowTest {
     public static void main(String[] args) {
         String serverIP = JOptionPane.showInputDialog("Enter server IP address:");
+        String room = JOptionPane.showInputDialog("Enter a room name (leave blank to be assigned one):");
         int port = 1234; // fixed port the server is using
 
-        new ClientWindow(serverIP, port);
+        new ClientWindow(serverIP, port, room);
     }
 }
@@ -0,0 +1,156 @@
+import java.util.*;
+import java.util.function.LongPredicate;
+
+// Deals each match its own deck from the shared question bank, seeded so a match can be
+// replayed from the seed in the log. Questions any of the room's players has already seen
+// are avoided where the bank allows it; each candidate is checked against each player's
+// own filter, so the chance of wrongly skipping one grows with the number of players,
+// not with how full their filters are.
+//
+// With no category or difficulty filter it draws random positions and checks only the
+// questions it draws, so dealing costs O(deck size) however big the bank is. With a filter
+// it makes one streaming pass over the bank's metadata with reservoir sampling; for a
+// MappedQuestionBank that reads only the compact index, never decoding a question that
+// isn't dealt.
+public class DeckBuilder {
+    private final List<Question> bank;
+    private final MappedQuestionBank mapped; // null when the bank is on the heap
+
+    public DeckBuilder(List<Question> bank) {
+        this.bank = bank;
+        this.mapped = bank instanceof MappedQuestionBank m ? m : null;
+    }
+
+    // Up to size questions in random order. category null and difficulty 0 mean any
+    public List<Question> deal(int size, String category, int difficulty, long seed, Collection<SeenQuestions> players) {
+        Random random = new Random(seed);
+        LongPredicate seen = id -> {
+            for (SeenQuestions player : players) {
+                if (player.mightContain(id)) return true;
+            }
+            return false;
+        };
+
+        int[] picked = (category == null && difficulty == 0)
+                ? sampleAny(size, random, seen)
+                : sampleMatching(size, category, difficulty, random, seen);
+
+        // Reservoirs and fill-ins come out partly in bank order, so shuffle them
+        for (int i = picked.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = picked[i];
+            picked[i] = picked[j];
+            picked[j] = swap;
+        }
+
+        // The bank's own Question objects, so rooms dealt the same question share its
+        // encoded wire form; the room numbers them in play order when it sends them
+        List<Question> deck = new ArrayList<>(picked.length);
+        for (int index : picked) {
+            deck.add(bank.get(index));
+        }
+        return deck;
+    }
+
+    // Random positions, unseen ones first
+    private int[] sampleAny(int size, Random random, LongPredicate seen) {
+        int n = bank.size();
+        int k = Math.min(size, n);
+
+        // Small bank: shuffle it whole and take the unseen questions first
+        if (n <= 4 * k) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) all[i] = i;
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = all[i];
+                all[i] = all[j];
+                all[j] = swap;
+            }
+            int[] picked = new int[k];
+            int count = 0;
+            for (int i = 0; i < n && count < k; i++) {
+                if (!seen.test(idOf(all[i]))) picked[count++] = all[i];
+            }
+            for (int i = 0; i < n && count < k; i++) {
+                if (seen.test(idOf(all[i]))) picked[count++] = all[i];
+            }
+            return picked;
+        }
+
+        // Large bank: draws rarely collide, so just redraw on duplicates and seen questions,
+        // and stop being picky about seen ones after enough misses
+        Set<Integer> chosen = new LinkedHashSet<>();
+        int misses = 0;
+        while (chosen.size() < k) {
+            int i = random.nextInt(n);
+            if (chosen.contains(i)) continue;
+            if (misses < 50 * k && seen.test(idOf(i))) {
+                misses++;
+                continue;
+            }
+            chosen.add(i);
+        }
+        return chosen.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // One pass with reservoir sampling (Algorithm R) over the matching questions; seen ones
+    // go to a second reservoir that only tops up the deck if there aren't enough unseen
+    private int[] sampleMatching(int size, String category, int difficulty, Random random, LongPredicate seen) {
+        int[] fresh = new int[size];
+        int[] stale = new int[size];
+        long freshCount = 0;
+        long staleCount = 0;
+
+        // Compare category numbers rather than names when reading a mapped index
+        int categoryNumber = -1;
+        if (category != null && mapped != null) {
+            categoryNumber = mapped.getCategories().indexOf(category);
+            if (categoryNumber < 0) return new int[0];
+        }
+
+        for (int i = 0; i < bank.size(); i++) {
+            if (categoryNumber >= 0) {
+                if (mapped.getCategoryNumber(i) != categoryNumber) continue;
+            } else if (category != null && !category.equals(categoryOf(i))) {
+                continue;
+            }
+            if (difficulty != 0 && difficulty != difficultyOf(i)) continue;
+
+            if (!seen.test(idOf(i))) {
+                freshCount = offer(fresh, freshCount, i, random);
+            } else {
+                staleCount = offer(stale, staleCount, i, random);
+            }
+        }
+
+        int freshTaken = (int) Math.min(freshCount, size);
+        int staleTaken = (int) Math.min(staleCount, size - freshTaken);
+        int[] picked = Arrays.copyOf(fresh, freshTaken + staleTaken);
+        System.arraycopy(stale, 0, picked, freshTaken, staleTaken);
+        return picked;
+    }
+
+    // Adds the count-th matching item to the reservoir and returns the new count
+    private static long offer(int[] reservoir, long count, int item, Random random) {
+        if (count < reservoir.length) {
+            reservoir[(int) count] = item;
+        } else {
+            long j = random.nextLong(count + 1);
+            if (j < reservoir.length) reservoir[(int) j] = item;
+        }
+        return count + 1;
+    }
+
+    private long idOf(int i) {
+        return mapped != null ? mapped.getId(i) : bank.get(i).getId();
+    }
+
+    private String categoryOf(int i) {
+        return mapped != null ? mapped.getCategory(i) : bank.get(i).getCategory();
+    }
+
+    private int difficultyOf(int i) {
+        return mapped != null ? mapped.getDifficulty(i) : bank.get(i).getDifficulty();
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Append-only binary journal of every game state change (joins, questions, buzzes,
+// winners, answers, penalties, final scores), for auditing disputed buzzes and for
+// rebuilding or re-driving a match with JournalReplay.
+//
+// Game threads only encode a record and drop it into a lock-free ring buffer; one
+// writer thread drains whatever has accumulated into a single FileChannel write and
+// then one fsync for the whole batch, so disk latency never reaches a game thread and
+// a busy server pays for far fewer fsyncs than events. If the ring is full the event
+// is dropped and counted rather than waited for. Until open() is called every method
+// is a no-op.
+//
+// File: header (a zero byte, int magic "TQJ1", int version, long wall-clock millis at
+// start), then records framed like WireProtocol's binary frames: varint length, one type
+// byte, varlong microseconds since start, string room, then the type's fields. Record
+// lengths are never zero, so a reader can tell a header apart from a record.
+public final class GameJournal {
+    public static final int MAGIC = 0x54514A31; // "TQJ1"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 17;
+
+    public static final int JOIN = 1;           // varint client, u8 joined mid-game
+    public static final int LEAVE = 2;          // varint client
+    public static final int MATCH_START = 3;    // varint n, n x varint client
+    public static final int QUESTION = 4;       // varint index, varlong id, string number, string text, u8 correct letter
+    public static final int BUZZ = 5;           // varint client (timestamp is the buzz's arrival)
+    public static final int WINNER = 6;         // varint client, sent ACK
+    public static final int NO_BUZZ = 7;
+    public static final int ANSWER = 8;         // varint client, string answer, u8 correct, zigzag score after
+    public static final int PENALTY = 9;        // varint client, zigzag score after
+    public static final int FINAL_SCORES = 10;  // varint n, n x (varint client, zigzag score), ranked
+    public static final int ROOM_CLOSED = 11;
+
+    private static final int RING_SIZE = 1 << 16; // power of two
+    private static final int BATCH_BYTES = 256 * 1024;
+
+    private static volatile GameJournal journal; // null = journaling off
+
+    private final FileChannel channel;
+    private final long startNanos = System.nanoTime();
+    private final AtomicReferenceArray<byte[]> ring = new AtomicReferenceArray<>(RING_SIZE);
+    private final AtomicLong head = new AtomicLong(); // next slot to claim
+    private volatile long tail;                       // next slot the writer takes
+    private volatile boolean closing;
+    private volatile boolean writerParked;            // appenders unpark it when set
+    private final Thread writer;
+
+    private GameJournal(Path file) throws IOException {
+        if (Files.exists(file) && Files.size(file) > 0) {
+            System.out.println("Appending to existing journal " + file);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        // Every run starts with its own header and its timestamps count from it; JournalReplay
+        // reads a header in the middle of the file as the start of the next run
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put((byte) 0).putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+
+        writer = new Thread(this::drain, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Starts journaling to file, appending if it already exists
+    public static void open(Path file) throws IOException {
+        GameJournal opened = new GameJournal(file);
+        journal = opened;
+        Runtime.getRuntime().addShutdownHook(new Thread(opened::close, "journal-close"));
+    }
+
+    public static boolean isOpen() {
+        return journal != null;
+    }
+
+    // Game events, called on whatever thread the event happened on
+
+    public static void joined(String room, int clientId, boolean midGame) {
+        GameJournal j = journal;
+        if (j == null) return;
+        j.append(j.record(JOIN, room, System.nanoTime()).varint(clientId).varint(midGame ? 1 : 0));
+    }
+
+    public static void left(String room, int clientId) {
+        GameJournal j = journal;
+        if (j == null) return;
+        j.append(j.record(LEAVE, room, System.nanoTime()).varint(clientId));
+    }
+
+    public static void matchStarted(String room, List<ClientThread> players) {
+        GameJournal j = journal;
+        if (j == null) return;
+        WireProtocol.FrameBuilder record = j.record(MATCH_START, room, System.nanoTime()).varint(players.size());
+        for (ClientThread player : players) {
+            record.varint(player.getClientID());
+        }
+        j.append(record);
+    }
+
+    public static void question(String room, int index, Question q) {
+        GameJournal j = journal;
+        if (j == null) return;
+        j.append(j.record(QUESTION, room, System.nanoTime()).varint(index).varlong(q.getId())
+                .string(q.getQuestionNumber()).string(q.getQuestionText()).varint(q.getCorrectAnswer()));
+    }
+
+    public static void buzz(String room, int clientId, long arrivalNanos) {
+        GameJournal j = journal;
+        if (j == null) return;
+        j.append(j.record(BUZZ, room, arrivalNanos).varint(clientId));
+    }
+
+    public static void winner(String room, int clientId) {
+        GameJournal j = journal;
+        if (j == null) return;
+        j.append(j.record(WINNER, room, System.nanoTime()).varint(clientId));
+    }
+
+    public static void noBuzz(String room) {
+        GameJournal j = journal;
+        if (j == null) return;
+        j.append(j.record(NO_BUZZ, room, System.nanoTime()));
+    }
+
+    public static void answer(String room, int clientId, String answer, boolean correct, int score) {
+        GameJournal j = journal;
+        if (j == null) return;
+        j.append(j.record(ANSWER, room, System.nanoTime()).varint(clientId).string(answer)
+                .varint(correct ? 1 : 0).zigzag(score));
+    }
+
+    public static void penalty(String room, int clientId, int score) {
+        GameJournal j = journal;
+        if (j == null) return;
+        j.append(j.record(PENALTY, room, System.nanoTime()).varint(clientId).zigzag(score));
+    }
+
+    public static void finalScores(String room, List<ClientThread> ranked) {
+        GameJournal j = journal;
+        if (j == null) return;
+        WireProtocol.FrameBuilder record = j.record(FINAL_SCORES, room, System.nanoTime()).varint(ranked.size());
+        for (ClientThread client : ranked) {
+            record.varint(client.getClientID()).zigzag(client.getScore());
+        }
+        j.append(record);
+    }
+
+    public static void roomClosed(String room) {
+        GameJournal j = journal;
+        if (j == null) return;
+        j.append(j.record(ROOM_CLOSED, room, System.nanoTime()));
+    }
+
+    private WireProtocol.FrameBuilder record(int type, String room, long atNanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(atNanos - startNanos));
+        return WireProtocol.frame(type).varlong(micros).string(room == null ? "" : room);
+    }
+
+    // Claims the next ring slot; drops the record if the writer is a full ring behind
+    private void append(WireProtocol.FrameBuilder record) {
+        byte[] bytes = record.build();
+        long slot;
+        do {
+            slot = head.get();
+            if (slot - tail >= RING_SIZE) {
+                Metrics.JOURNAL_DROPPED.increment();
+                return;
+            }
+        } while (!head.compareAndSet(slot, slot + 1));
+        ring.set((int) (slot & (RING_SIZE - 1)), bytes);
+        // Read after the slot is set; the writer sets the flag before its last look at the ring,
+        // so either it sees this record or we see it parked
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void drain() {
+        ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+        while (true) {
+            long next = tail;
+            int taken = 0;
+            byte[] record;
+            // A claimed slot is filled a moment after its claim; stop at the first gap
+            while ((record = ring.get((int) (next & (RING_SIZE - 1)))) != null) {
+                if (record.length > batch.remaining()) {
+                    if (batch.position() == 0) {
+                        batch = ByteBuffer.allocateDirect(record.length); // oversized, rare
+                    } else {
+                        break;
+                    }
+                }
+                batch.put(record);
+                ring.set((int) (next & (RING_SIZE - 1)), null);
+                next++;
+                taken++;
+            }
+            tail = next;
+
+            if (taken == 0) {
+                if (closing && head.get() == tail) return;
+                // Nothing to write (or the next slot is claimed but not filled yet): sleep until
+                // an append fills it or close() wakes us
+                writerParked = true;
+                if (ring.get((int) (next & (RING_SIZE - 1))) == null && !closing) {
+                    LockSupport.park(this);
+                }
+                writerParked = false;
+                continue;
+            }
+
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                // Group commit: one fsync covers every record in the batch
+                long syncStart = System.nanoTime();
+                channel.force(false);
+                Metrics.JOURNAL_FSYNC.recordSince(syncStart);
+                Metrics.JOURNAL_WRITTEN.add(taken);
+            } catch (IOException e) {
+                Log.info("Journal write failed, " + taken + " event(s) lost: " + e.getMessage());
+            }
+            if (batch.capacity() > BATCH_BYTES) {
+                batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+            }
+            batch.clear();
+        }
+    }
+
+    // Writes out what is queued and closes the file
+    private void close() {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+            channel.close();
+        } catch (InterruptedException | IOException e) {
+            // exiting anyway
+        }
+    }
+}
@@ -0,0 +1,622 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+// One trivia match. Each room has its own players, question deck, buzz arbiter,
+// timers and scoreboard, while sharing the server's client threads/event loops
+// and its GameScheduler clock with every other room.
+//
+// Game state belongs to the room's RoomLoop. The public entry points (join, leave,
+// offerBuzz, a player's answer, ...) only post an event to it, and timers expire onto
+// it, so every transition runs on one thread at a time, in order, without locks. An
+// expiry from a phase that was replaced before it ran is ignored, so an answer racing
+// its timer moves the game on exactly once.
+public class GameRoom {
+    private static final int LOBBY_SECONDS = 15;
+    private static final int MIN_PLAYERS = 2;
+    private static final int BUZZ_SECONDS = 15;
+    // A restored match closes if nobody resumes within RESUME_TIMEOUT_SECONDS. It carries
+    // on as soon as every player it waits for is back, or RESUME_DELAY_MILLIS after the
+    // first one if some are still missing
+    public static final int RESUME_TIMEOUT_SECONDS = 120;
+    private static final int RESUME_DELAY_MILLIS = 250;
+    private static final int MIN_RESUME_BUZZ_SECONDS = 5;
+    // Players shown in the live standings and the final scoreboard
+    private static final int LEADERBOARD_SIZE = 10;
+
+    private final String name;
+    // Deals the match's questions once the players are known, so it can skip ones they've seen
+    private final Function<List<ClientThread>, List<Question>> dealer;
+    private volatile List<Question> deck = List.of();
+    private final int maxPlayers; // 0 = no limit
+    private final GameScheduler scheduler;
+
+    private final RoomLoop loop = new RoomLoop();
+
+    // Players in this room; only the loop touches the list, other threads read the count
+    private final List<ClientThread> clients = new ArrayList<>();
+    private volatile int playerCount;
+    // Decides who buzzed first for the current question
+    private final BuzzArbiter buzzes = new BuzzArbiter();
+    private final AtomicInteger nextSeat = new AtomicInteger();
+    // Ranks the players as their scores change
+    private final Leaderboard leaderboard = new Leaderboard();
+    private List<Leaderboard.Standing> sentStandings = List.of();
+    private long questionSentNanos; // buzz latency is measured from here
+
+    private volatile int currentQuestionIndex = 0; // volatile for the admin console
+    private volatile boolean started = false;
+    private volatile boolean finished = false;
+
+    // Lobby countdown, then whichever phase (buzz/answer window) is running. Every new
+    // phase bumps the generation; timer events carry theirs and are dropped if stale
+    private GameScheduler.Phase activePhase;
+    private String activePhaseName = "";
+    private int phaseGeneration;
+
+    // Players who dropped or were restored from a snapshot and haven't resumed yet, and
+    // the buzz window the interrupted question gets when play resumes
+    private final List<MatchState.Player> awaiting = new ArrayList<>();
+    private boolean resuming;
+    private boolean resumeScheduled;
+    private int resumeBuzzSeconds = BUZZ_SECONDS;
+    private volatile MatchState lastState; // for snapshots taken while the loop is busy
+
+    // A room that plays the given questions in order
+    public GameRoom(String name, List<Question> deck, int maxPlayers, GameScheduler scheduler) {
+        this(name, players -> deck, maxPlayers, scheduler);
+    }
+
+    public GameRoom(String name, Function<List<ClientThread>, List<Question>> dealer, int maxPlayers,
+                    GameScheduler scheduler) {
+        this.name = name;
+        this.dealer = dealer;
+        this.maxPlayers = maxPlayers;
+        this.scheduler = scheduler;
+    }
+
+    // A match picked up from a snapshot. It waits for its players to resume their sessions,
+    // then asks the interrupted question again
+    public static GameRoom restore(MatchState state, int maxPlayers, GameScheduler scheduler) {
+        GameRoom room = new GameRoom(state.room, state.deck, maxPlayers, scheduler);
+        room.deck = state.deck;
+        room.currentQuestionIndex = state.questionIndex;
+        room.started = true;
+        room.resuming = true;
+        room.awaiting.addAll(state.players);
+        room.lastState = state;
+
+        // The buzz window keeps what it had left; any other phase restarts the question
+        long remainingMillis = state.phaseDeadlineMillis - System.currentTimeMillis();
+        if (state.phase.equals("buzz") && remainingMillis > 0) {
+            int seconds = (int) ((remainingMillis + 999) / 1000);
+            room.resumeBuzzSeconds = Math.max(MIN_RESUME_BUZZ_SECONDS, Math.min(BUZZ_SECONDS, seconds));
+        }
+        room.schedule(RESUME_TIMEOUT_SECONDS, room::abandon);
+        return room;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public int getCurrentQuestionIndex() {
+        return currentQuestionIndex;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public boolean isFull() {
+        return maxPlayers > 0 && playerCount >= maxPlayers;
+    }
+
+    // Queues an event on this room's loop
+    public void post(Runnable event) {
+        loop.post(event);
+    }
+
+    // Opens the lobby: the game starts LOBBY_SECONDS after the room is created
+    public void openLobby() {
+        loop.post(() -> {
+            Log.info("[" + name + "] Waiting " + LOBBY_SECONDS + " seconds for clients to join..");
+            schedule(LOBBY_SECONDS, this::start);
+        });
+    }
+
+    // Adds a player; players joining a running match wait for the next question. The
+    // player points at this room straight away, so its next answer or buzz comes here
+    public void join(ClientThread client) {
+        join(client, true);
+    }
+
+    // A resumed player keeps the match stats its session brought back
+    private void join(ClientThread client, boolean fresh) {
+        int seat = nextSeat.getAndIncrement();
+        client.setRoom(this, seat);
+        loop.post(() -> seat(client, seat, fresh));
+    }
+
+    private void seat(ClientThread client, int seat, boolean fresh) {
+        if (client.getRoom() != this) return; // moved on before it was seated
+        clients.add(client);
+        playerCount = clients.size();
+        leaderboard.add(client, seat);
+        client.sendMessage("ROOM " + name);
+        if (started) {
+            client.setJoinedMidGame(true);
+            client.sendMessage("WaitForNextRound");
+        }
+        if (fresh) {
+            client.resetMatchStats();
+        }
+        GameJournal.joined(name, client.getClientID(), started);
+        playerBack();
+        if (Log.event()) Log.info("Client-" + client.getClientID() + " joined " + name + ".");
+    }
+
+    // Seats a player who resumed a session from this room (it may already be seated if its
+    // new connection was placed here before it resumed, in which case its score moved)
+    public void rejoin(ClientThread client) {
+        if (client.getRoom() != this) {
+            join(client, false);
+        }
+        loop.post(() -> {
+            awaiting.removeIf(player -> player.token == client.getSessionToken());
+            if (clients.contains(client)) {
+                leaderboard.update(client);
+            }
+            playerBack();
+        });
+    }
+
+    // Someone is seated in a paused or restored match: play on once everyone it waits for
+    // is back, giving any stragglers RESUME_DELAY_MILLIS from the first one
+    private void playerBack() {
+        if (!resuming || clients.isEmpty()) return;
+        if (awaiting.isEmpty()) {
+            cancelPhase();
+            resumePlay();
+        } else if (!resumeScheduled) {
+            resumeScheduled = true;
+            activePhase = scheduler.runAfterMillis(RESUME_DELAY_MILLIS, inLoop(cancelPhase(), this::resumePlay));
+        }
+    }
+
+    private void resumePlay() {
+        resuming = false;
+        resumeScheduled = false;
+        Log.info("[" + name + "] Resuming at question " + (currentQuestionIndex + 1) + " with "
+                + clients.size() + " player(s) back.");
+        try {
+            askNextQuestion(resumeBuzzSeconds);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // A player whose connection dropped. Mid-match its place is kept (and snapshotted) until it
+    // resumes; if that leaves nobody connected, the match pauses for up to graceSeconds
+    public void disconnect(ClientThread client, int graceSeconds) {
+        loop.post(() -> {
+            if (!started || finished) {
+                remove(client);
+            } else if (unseat(client)) {
+                awaiting.add(new MatchState.Player(client));
+                if (clients.isEmpty()) {
+                    pause(graceSeconds);
+                }
+            }
+        });
+    }
+
+    private void pause(int graceSeconds) {
+        if (!resuming) {
+            resuming = true;
+            // Re-ask the interrupted question when someone is back, unless it was already answered
+            if (!activePhaseName.equals("cooldown")) {
+                currentQuestionIndex = Math.max(0, currentQuestionIndex - 1);
+            }
+            resumeBuzzSeconds = BUZZ_SECONDS;
+        } else if (!resumeScheduled) {
+            return; // already paused
+        }
+        resumeScheduled = false; // anyone who was back has dropped again
+        Log.info("[" + name + "] Everyone dropped. Pausing for up to " + graceSeconds + " seconds.");
+        schedule(graceSeconds, this::abandon);
+    }
+
+    // Takes a player off the room's lists; false if it wasn't seated
+    private boolean unseat(ClientThread client) {
+        if (!clients.remove(client)) return false;
+        playerCount = clients.size();
+        leaderboard.remove(client);
+        GameJournal.left(name, client.getClientID());
+        return true;
+    }
+
+    // Paused or restored match that nobody came back to
+    private void abandon() {
+        if (clients.isEmpty() && !finished) {
+            Log.info("[" + name + "] Nobody resumed. Closing room.");
+            close();
+        }
+    }
+
+    // This match as it stands, for a snapshot, taken on the loop; completes with null
+    // unless it is under way. A caller that can't wait for a busy room uses lastState()
+    public CompletableFuture<MatchState> captureState() {
+        if (!started || finished) return CompletableFuture.completedFuture(null);
+        return loop.ask(() -> {
+            if (finished) return null;
+            List<MatchState.Player> players = new ArrayList<>(awaiting);
+            for (ClientThread client : clients) {
+                players.add(new MatchState.Player(client));
+            }
+            GameScheduler.Phase phase = activePhase;
+            boolean running = phase != null && !phase.isDone() && !resuming;
+            // While resuming, the question to re-ask is the current one; otherwise it's the last one sent
+            int question = resuming ? currentQuestionIndex : Math.max(0, currentQuestionIndex - 1);
+            MatchState state = new MatchState(name, question, running ? activePhaseName : "",
+                    running ? phase.deadlineMillis() : 0, deck, players);
+            lastState = state;
+            return state;
+        });
+    }
+
+    // The last state captureState() took, null if none yet
+    public MatchState lastState() {
+        return lastState;
+    }
+
+    // Takes a player out of the room without closing its connection
+    public void leave(ClientThread client) {
+        loop.post(() -> remove(client));
+    }
+
+    private void remove(ClientThread client) {
+        if (!unseat(client)) return;
+        if (clients.isEmpty() && !finished) {
+            Log.info("[" + name + "] All clients left. Closing room.");
+            close();
+        }
+    }
+
+    private void start() {
+        if (clients.size() < MIN_PLAYERS) {
+            Log.info("[" + name + "] Not enough clients joined. Closing room.");
+            for (ClientThread client : clients) {
+                client.sendMessage("not_enough_players");
+            }
+            close();
+            return;
+        }
+
+        Log.info("[" + name + "] Starting Trivia Game!");
+        deck = dealer.apply(clients);
+        started = true;
+        for (ClientThread client : clients) {
+            client.resetMatchStats();
+        }
+        GameJournal.matchStarted(name, clients);
+        try {
+            sendNextQuestionToAll();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Stops the room's timers, disconnects its players and frees its name
+    private void close() {
+        finished = true;
+        cancelPhase();
+        for (ClientThread client : clients) {
+            try {
+                TriviaServer.removeClient(client);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        GameJournal.roomClosed(name);
+        TriviaServer.removeRoom(this);
+    }
+
+    // Sends the next trivia question to all clients
+    public void sendNextQuestionToAll() throws IOException {
+        askNextQuestion(BUZZ_SECONDS);
+    }
+
+    private void askNextQuestion(int buzzSeconds) throws IOException {
+        if (finished) return;
+        if (currentQuestionIndex >= deck.size()) {
+            endGame();
+            return;
+        }
+
+        if (currentQuestionIndex > 0) {
+            pushStandings();
+        }
+
+        // Only players seated before this question can buzz for it. The round is the question's
+        // number, which clients put in their buzzes so a late one can't count for the next question
+        buzzes.openRound(currentQuestionIndex + 1, nextSeat.get());
+
+        Question q = deck.get(currentQuestionIndex);
+        if (Log.event()) Log.info("\n[" + name + "] Question " + (currentQuestionIndex + 1) + ": " + q.getQuestionText());
+        GameJournal.question(name, currentQuestionIndex, q);
+        broadcastQuestion(q);
+
+        currentQuestionIndex++;
+
+        // Start the buzz window (15 seconds, unless resuming an interrupted one)
+        startTimer("buzz", buzzSeconds, () -> {
+            List<BuzzArbiter.Buzz> ordered = buzzes.closeRound();
+            BuzzArbiter.Buzz winning = pickWinner(ordered);
+
+            if (winning != null) {
+                ClientThread winner = winning.getClient();
+                winner.setCanAnswer(true);
+                winner.send(WireProtocol.ACK);
+                Metrics.BUZZ_TO_ACK.recordSince(winning.getArrivalNanos());
+                GameJournal.winner(name, winner.getClientID());
+                if (Log.event()) Log.info("Client-" + winner.getClientID() + " buzzed first and may answer.");
+
+                for (ClientThread client : clients) {
+                    if (client != winner) {
+                        client.send(WireProtocol.NAK);
+                    }
+                }
+
+                // Start 10-second timer for answering
+                startTimer("answer", 10, () -> {
+                    try {
+                        clientOutOfTime(winner);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+
+            } else {
+                GameJournal.noBuzz(name);
+                if (Log.event()) Log.info("[" + name + "] No one buzzed in. Skipping to next question.");
+                for (ClientThread client : clients) {
+                    client.sendMessage("Time expired");
+                }
+
+                try {
+                    sendNextQuestionToAll();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    // Resets every player for a new question and sends it to them, numbered by its place in the deck
+    public void broadcastQuestion(Question q) {
+        long start = System.nanoTime();
+        questionSentNanos = start;
+        // Encoded once per protocol for the room, around the text and options every room
+        // dealt this Question shares; every client gets the same bytes
+        WireProtocol.Message frame = WireProtocol.question("Question " + (currentQuestionIndex + 1), q);
+        String correctAnswer = String.valueOf(q.getCorrectAnswer());
+
+        for (ClientThread client : clients) {
+            client.setJoinedMidGame(false); //mid-game joiners play from here on
+            client.setCanAnswer(false);
+            client.setCorrectAnswer(correctAnswer);
+            client.markSeen(q.getId());
+            client.send(frame);
+        }
+        Metrics.BROADCAST.recordSince(start);
+    }
+
+    // Called whenever a player's score changes
+    public void scoreChanged(ClientThread client) {
+        leaderboard.update(client);
+    }
+
+    // Between questions: the top of the leaderboard to everyone if it changed, and to each
+    // player its own rank if that changed
+    private void pushStandings() {
+        List<Leaderboard.Standing> top = leaderboard.top(LEADERBOARD_SIZE);
+        if (!top.equals(sentStandings)) {
+            sentStandings = top;
+            WireProtocol.Message standings = WireProtocol.standings(top);
+            for (ClientThread client : clients) {
+                client.send(standings);
+            }
+        }
+        leaderboard.forEachRankChange((client, rank, players) -> client.send(WireProtocol.rank(rank, players)));
+    }
+
+    // Records a UDP buzz from one of this room's players, stamped when it arrived and
+    // ranked as if sent compensationNanos earlier (0 unless latency compensation is on).
+    // round is the question number the buzz was sent for, 0 if the client didn't say.
+    // The outcome goes to counted: false if it didn't count (round closed or not the
+    // buzz's round, duplicate, or joined mid-question)
+    public void offerBuzz(ClientThread client, int round, long arrivalNanos, long compensationNanos,
+                          Consumer<Boolean> counted) {
+        loop.post(() -> {
+            boolean accepted = buzzes.offer(client, round, arrivalNanos, arrivalNanos - compensationNanos);
+            if (accepted) {
+                client.recordBuzz(arrivalNanos - questionSentNanos);
+                GameJournal.buzz(name, client.getClientID(), arrivalNanos);
+                if (Log.event()) Log.info("Client-" + client.getClientID() + " buzzed.");
+            }
+            counted.accept(accepted);
+        });
+    }
+
+    // Logs the buzz order for audits and returns the earliest buzz from a player still in the room
+    private BuzzArbiter.Buzz pickWinner(List<BuzzArbiter.Buzz> ordered) {
+        if (ordered.isEmpty()) return null;
+
+        long firstSent = ordered.get(0).getSentNanos();
+        StringBuilder audit = new StringBuilder("[" + name + "] Buzz order:");
+        BuzzArbiter.Buzz winner = null;
+        for (BuzzArbiter.Buzz buzz : ordered) {
+            ClientThread client = buzz.getClient();
+            audit.append(" Client-").append(client.getClientID())
+                 .append(String.format(" (+%.3fms", (buzz.getSentNanos() - firstSent) / 1_000_000.0));
+            long compensation = buzz.getArrivalNanos() - buzz.getSentNanos();
+            if (compensation != 0) {
+                audit.append(String.format(", arrived %.1fms later", compensation / 1_000_000.0));
+            }
+            audit.append(')');
+            if (winner == null && clients.contains(client)) {
+                winner = buzz;
+            }
+        }
+        Log.info(audit.toString());
+        return winner;
+    }
+
+    // Ends the game and displays final scores
+    private void endGame() {
+        if (finished) return;
+        finished = true;
+
+        Log.info("\n[" + name + "] Game Over. Final Scores:");
+        // The journal keeps every player's score; players get their own rank and the top of the board
+        List<ClientThread> ranked = leaderboard.ranked();
+        GameJournal.finalScores(name, ranked);
+        PlayerStats.recordMatch(ranked);
+        leaderboard.forEachRankChange((client, rank, players) -> client.send(WireProtocol.rank(rank, players)));
+        WireProtocol.Message scoreboard = WireProtocol.scoreboard(leaderboard.top(LEADERBOARD_SIZE));
+
+        //sends final scores of clients to each client
+        for (ClientThread client : ranked) {
+            try {
+                client.send(WireProtocol.finalScore(client.getScore()));
+                client.send(scoreboard);
+                client.sendMessage("Game Over!");
+                if (Log.event()) Log.info("Client " + client.getClientID() + ": " + client.getScore());
+            } catch (Exception e) {
+                Log.info("Error sending final score to Client-" + client.getClientID() + ": " + e.getMessage());
+            }
+        }
+
+        // Allow time for clients to receive messages, without holding up the shared clock
+        schedule(1, this::close);
+    }
+
+    // SCOREBOARD|Client-0:30;Client-1:10; in ranked order
+    public static String buildScoreboard(List<Leaderboard.Standing> top) {
+        StringBuilder scoreboard = new StringBuilder("SCOREBOARD|");
+        for (Leaderboard.Standing standing : top) {
+            scoreboard.append("Client-")
+                      .append(standing.clientId())
+                      .append(":")
+                      .append(standing.score())
+                      .append(";");
+        }
+        return scoreboard.toString();
+    }
+
+    // Starts a countdown phase on the game clock, replacing whatever phase was running.
+    // Clients that count down locally get one PHASE message with the deadline; older
+    // clients get a TIMER tick every second, and if there are none the phase doesn't tick
+    public void startTimer(String phaseName, int seconds, Runnable onExpire) {
+        int generation = cancelPhase();
+
+        boolean anyTicking = false;
+        for (ClientThread client : clients) {
+            anyTicking |= !client.usesDeadlineTimers();
+        }
+
+        GameScheduler.Phase phase;
+        if (anyTicking) {
+            phase = scheduler.startPhase(seconds, inLoop(generation, timeLeft -> {
+                // Queued per client, so a stalled socket can't hold up the room
+                WireProtocol.Message tick = WireProtocol.timer(timeLeft);
+                for (ClientThread client : clients) {
+                    if (!client.usesDeadlineTimers()) {
+                        client.sendTick(tick);
+                    }
+                }
+            }), inLoop(generation, onExpire));
+        } else {
+            phase = scheduler.runAfter(seconds, inLoop(generation, onExpire));
+        }
+        activePhase = phase;
+        activePhaseName = phaseName;
+
+        WireProtocol.Message start = WireProtocol.phase(phaseName, seconds, phase.deadlineMillis());
+        for (ClientThread client : clients) {
+            if (client.usesDeadlineTimers()) {
+                client.send(start);
+            }
+        }
+    }
+
+    // Runs action on the loop after seconds, replacing whatever phase was running
+    private void schedule(int seconds, Runnable action) {
+        activePhase = scheduler.runAfter(seconds, inLoop(cancelPhase(), action));
+    }
+
+    // Stops the running phase; whatever it already queued on the loop is dropped too
+    private int cancelPhase() {
+        GameScheduler.Phase phase = activePhase;
+        if (phase != null) {
+            phase.cancel();
+        }
+        return ++phaseGeneration;
+    }
+
+    // A game-clock callback that runs on the loop, and only while its phase is current
+    private Runnable inLoop(int generation, Runnable action) {
+        return () -> loop.post(() -> {
+            if (generation == phaseGeneration) action.run();
+        });
+    }
+
+    private IntConsumer inLoop(int generation, IntConsumer action) {
+        return value -> loop.post(() -> {
+            if (generation == phaseGeneration) action.accept(value);
+        });
+    }
+
+    // Called when a client runs out of time to answer
+    public void clientOutOfTime(ClientThread client) throws IOException {
+    	if (client.getCanAnswer()) {
+    		client.setCanAnswer(false);
+    		client.decreaseScore(20);
+    		client.recordPenalty();
+    		client.send(WireProtocol.score(WireProtocol.PENALTY, client.getScore()));
+    		GameJournal.penalty(name, client.getClientID(), client.getScore());
+    		if (Log.event()) Log.info("Client -" + client.getClientID() + " buzzed in but didn't answer. -20");
+    	}
+
+    	client.sendMessage("Time expired");
+    	sendNextQuestionToAll();
+    }
+
+    // Handles timer after answer submission (5 seconds)
+    public void handleSubmission() {
+        startTimer("cooldown", 5, () -> {
+            for (ClientThread client : clients) {
+                client.sendMessage("You may poll again.");
+                client.sendMessage("UNLOCK_POLL");
+            }
+        });
+    }
+
+    // Advances the game to the next question
+    public void moveAllToNextQuestion() throws IOException {
+        sendNextQuestionToAll();
+    }
+}
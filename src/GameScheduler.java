@@ -0,0 +1,115 @@
+import java.util.concurrent.*;
+import java.util.function.IntConsumer;
+
+// Game clock shared by every match. Phases (buzz window, answer window, ...) are
+// scheduled on one ScheduledExecutorService instead of creating a new
+// java.util.Timer thread per phase. Each phase has a fixed System.nanoTime()
+// deadline, and every tick is derived from it, so a late tick never stretches
+// the phase and wall-clock changes don't affect it.
+public class GameScheduler {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ScheduledExecutorService clock;
+
+    public GameScheduler() {
+        clock = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "game-clock"));
+    }
+
+    // Calls onTick(secondsLeft) once a second from seconds down to 0, then onExpire
+    public Phase startPhase(int seconds, IntConsumer onTick, Runnable onExpire) {
+        Phase phase = new Phase(System.nanoTime() + seconds * NANOS_PER_SECOND, onTick, onExpire);
+        phase.schedule(seconds);
+        return phase;
+    }
+
+    // Runs task once after the given number of seconds, without ticks
+    public Phase runAfter(int seconds, Runnable task) {
+        return runAfterMillis(seconds * 1000L, task);
+    }
+
+    public Phase runAfterMillis(long millis, Runnable task) {
+        Phase phase = new Phase(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis), secondsLeft -> { }, task);
+        phase.schedule(0);
+        return phase;
+    }
+
+    public void shutdown() {
+        clock.shutdownNow();
+    }
+
+    // Handle for a running phase
+    public final class Phase {
+        private final long deadline;
+        private final IntConsumer onTick;
+        private final Runnable onExpire;
+        private volatile boolean done = false;
+        private volatile ScheduledFuture<?> next;
+        private volatile long nextDue; // System.nanoTime() the next tick is meant for
+
+        private Phase(long deadline, IntConsumer onTick, Runnable onExpire) {
+            this.deadline = deadline;
+            this.onTick = onTick;
+            this.onExpire = onExpire;
+        }
+
+        // Stops the phase; its remaining ticks and onExpire never run
+        public void cancel() {
+            done = true;
+            ScheduledFuture<?> pending = next;
+            if (pending != null) pending.cancel(false);
+        }
+
+        // True once the phase expired or was cancelled
+        public boolean isDone() {
+            return done;
+        }
+
+        // Nanoseconds until the phase expires, negative once it has
+        public long remainingNanos() {
+            return deadline - System.nanoTime();
+        }
+
+        // The deadline on the wall clock, for telling clients when the phase ends
+        public long deadlineMillis() {
+            return System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+        }
+
+        private void schedule(int secondsLeft) {
+            nextDue = deadline - secondsLeft * NANOS_PER_SECOND;
+            long delay = nextDue - System.nanoTime();
+            try {
+                next = clock.schedule(this::tick, Math.max(0, delay), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                done = true; // scheduler shut down
+            }
+        }
+
+        private void tick() {
+            if (done) return;
+            Metrics.TIMER_DRIFT.recordSince(nextDue);
+
+            // Round up so an on-time tick reports the full second it starts
+            long remaining = remainingNanos();
+            int secondsLeft = remaining <= 0 ? 0 : (int) ((remaining + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+
+            // Exceptions are reported but never escape, so the shared clock keeps running for other games
+            try {
+                onTick.accept(secondsLeft);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+
+            if (secondsLeft > 0) {
+                schedule(secondsLeft - 1);
+                return;
+            }
+
+            done = true;
+            try {
+                onExpire.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.*;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+// Rebuilds matches from a GameJournal file: who played, every question, the full buzz
+// order with arrival offsets, who won each buzz and how they answered, and the scores.
+// Prints each match as a timeline and checks the rebuilt scores against the final
+// scoreboard the server recorded. LoadTestClient --replay uses the same model to
+// re-drive recorded traffic against another server build.
+//
+// Usage: java -cp TriviaServer.jar JournalReplay <journal.tqj> [--room=name] [--summary]
+public class JournalReplay {
+
+    // One match, from its lobby until its room closed
+    public static final class Match {
+        public final String room;
+        public final long startedMillis; // wall clock
+        public final List<Integer> players = new ArrayList<>();
+        public final List<Round> rounds = new ArrayList<>();
+        // Score of each player as of their last answer or penalty in this match
+        public final Map<Integer, Integer> scores = new LinkedHashMap<>();
+        public int[] finalIds;           // ranked, null if the match never finished
+        public int[] finalScores;
+        private boolean started;
+
+        Match(String room, long startedMillis) {
+            this.room = room;
+            this.startedMillis = startedMillis;
+        }
+
+        public boolean isFinished() {
+            return finalIds != null;
+        }
+    }
+
+    // One question and everything players did with it; times are microseconds after it was sent
+    public static final class Round {
+        public final int index;
+        public final String number;
+        public final String text;
+        public final char correctAnswer;
+        final long askedMicros;
+        public final List<int[]> buzzes = new ArrayList<>(); // {client, micros after asked}, in arrival order
+        public int winner = -1;
+        public long winnerMicros = -1;
+        public String answer;
+        public boolean answeredCorrectly;
+        public long answerMicros = -1;
+        public boolean penalty;
+
+        Round(int index, String number, String text, char correctAnswer, long askedMicros) {
+            this.index = index;
+            this.number = number;
+            this.text = text;
+            this.correctAnswer = correctAnswer;
+            this.askedMicros = askedMicros;
+        }
+
+        // Microseconds after the question that this player buzzed, or -1
+        public long buzzMicros(int client) {
+            for (int[] buzz : buzzes) {
+                if (buzz[0] == client) return buzz[1];
+            }
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args[0].startsWith("--")) {
+            System.out.println("Usage: java JournalReplay <journal.tqj> [--room=name] [--summary]");
+            System.exit(1);
+        }
+        String room = null;
+        boolean summary = false;
+        for (String arg : args) {
+            if (arg.startsWith("--room=")) room = arg.substring("--room=".length());
+            if (arg.equals("--summary")) summary = true;
+        }
+
+        List<Match> matches = read(Paths.get(args[0]));
+        int shown = 0;
+        for (Match match : matches) {
+            if (room != null && !room.equals(match.room)) continue;
+            if (summary) {
+                printSummary(match);
+            } else {
+                printTimeline(match);
+            }
+            shown++;
+        }
+        System.out.println(shown + " match(es).");
+    }
+
+    // Every match in the journal, in the order they were opened
+    public static List<Match> read(Path file) throws IOException {
+        List<Match> matches = new ArrayList<>();
+        Map<String, Match> open = new HashMap<>();
+        long runStartMillis = 0;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            byte[] buffer = new byte[256];
+            while (true) {
+                int length;
+                try {
+                    length = readVarint(in);
+                } catch (EOFException e) {
+                    System.out.println("Journal ends mid-record; the server stopped while writing it.");
+                    break;
+                }
+                if (length < 0) break;
+
+                if (length == 0) {
+                    // A run's header: everything after it is timed from its start
+                    DataInputStream header = new DataInputStream(in);
+                    if (header.readInt() != GameJournal.MAGIC) throw new IOException("Not a game journal");
+                    int version = header.readInt();
+                    if (version != GameJournal.VERSION) {
+                        throw new IOException("Journal version " + version + ", expected " + GameJournal.VERSION);
+                    }
+                    runStartMillis = header.readLong();
+                    open.clear();
+                    continue;
+                }
+
+                if (buffer.length < length) buffer = new byte[length];
+                if (in.readNBytes(buffer, 0, length) < length) {
+                    System.out.println("Journal ends mid-record; the server stopped while writing it.");
+                    break;
+                }
+                WireProtocol.Cursor record = new WireProtocol.Cursor(buffer, length);
+                int type = record.readByte();
+                long micros = record.readVarlong();
+                String name = record.readString();
+
+                Match match = open.get(name);
+                if (match == null) {
+                    match = new Match(name, runStartMillis + micros / 1000);
+                    open.put(name, match);
+                    matches.add(match);
+                }
+                apply(match, type, micros, record);
+                if (type == GameJournal.ROOM_CLOSED) {
+                    open.remove(name);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static void apply(Match match, int type, long micros, WireProtocol.Cursor record) throws IOException {
+        Round round = match.rounds.isEmpty() ? null : match.rounds.get(match.rounds.size() - 1);
+        switch (type) {
+            case GameJournal.JOIN -> {
+                int client = record.readVarint();
+                if (match.started && !match.players.contains(client)) match.players.add(client);
+            }
+            case GameJournal.MATCH_START -> {
+                match.started = true;
+                int count = record.readVarint();
+                for (int i = 0; i < count; i++) {
+                    match.players.add(record.readVarint());
+                }
+            }
+            case GameJournal.QUESTION -> {
+                int index = record.readVarint();
+                record.readVarlong(); // question id
+                String number = record.readString();
+                String text = record.readString();
+                match.rounds.add(new Round(index, number, text, (char) record.readVarint(), micros));
+            }
+            case GameJournal.BUZZ -> {
+                if (round != null) round.buzzes.add(new int[] {record.readVarint(), (int) (micros - round.askedMicros)});
+            }
+            case GameJournal.WINNER -> {
+                if (round != null) {
+                    round.winner = record.readVarint();
+                    round.winnerMicros = micros - round.askedMicros;
+                }
+            }
+            case GameJournal.ANSWER -> {
+                int client = record.readVarint();
+                String answer = record.readString();
+                boolean correct = record.readVarint() == 1;
+                match.scores.put(client, record.readZigzag());
+                if (round != null) {
+                    round.answer = answer;
+                    round.answeredCorrectly = correct;
+                    round.answerMicros = micros - round.askedMicros;
+                }
+            }
+            case GameJournal.PENALTY -> {
+                match.scores.put(record.readVarint(), record.readZigzag());
+                if (round != null) round.penalty = true;
+            }
+            case GameJournal.FINAL_SCORES -> {
+                int count = record.readVarint();
+                match.finalIds = new int[count];
+                match.finalScores = new int[count];
+                for (int i = 0; i < count; i++) {
+                    match.finalIds[i] = record.readVarint();
+                    match.finalScores[i] = record.readZigzag();
+                }
+            }
+            default -> {
+                // LEAVE, NO_BUZZ, ROOM_CLOSED carry nothing to rebuild; unknown types are skipped
+            }
+        }
+    }
+
+    private static void printTimeline(Match match) {
+        System.out.println("== " + match.room + ", opened " + formatTime(match.startedMillis) + ", "
+                + match.players.size() + " player(s)");
+        for (Round round : match.rounds) {
+            System.out.println("  " + round.number + " [" + round.correctAnswer + "] " + round.text);
+            if (!round.buzzes.isEmpty()) {
+                StringBuilder order = new StringBuilder("    buzzes:");
+                long first = round.buzzes.get(0)[1];
+                for (int[] buzz : round.buzzes) {
+                    order.append(" Client-").append(buzz[0])
+                         .append(String.format(" %.3fs (+%.3fms)", buzz[1] / 1e6, (buzz[1] - first) / 1e3));
+                }
+                System.out.println(order);
+            }
+            if (round.winner < 0) {
+                System.out.println("    no buzz");
+                continue;
+            }
+            String outcome = round.answer != null
+                    ? "answered " + round.answer + (round.answeredCorrectly ? " (correct)" : " (wrong)")
+                    : round.penalty ? "ran out of time" : "no answer recorded";
+            System.out.println("    Client-" + round.winner + " won the buzz, " + outcome);
+        }
+        printFinal(match);
+    }
+
+    private static void printSummary(Match match) {
+        int buzzes = 0;
+        for (Round round : match.rounds) {
+            buzzes += round.buzzes.size();
+        }
+        System.out.println(match.room + " " + formatTime(match.startedMillis) + ": " + match.players.size()
+                + " player(s), " + match.rounds.size() + " question(s), " + buzzes + " buzz(es)");
+        printFinal(match);
+    }
+
+    // Final scoreboard, checked against the scores rebuilt from answers and penalties
+    private static void printFinal(Match match) {
+        if (!match.isFinished()) {
+            System.out.println("  (match did not finish)");
+            return;
+        }
+        StringBuilder line = new StringBuilder("  final:");
+        List<String> mismatches = new ArrayList<>();
+        for (int i = 0; i < match.finalIds.length; i++) {
+            int client = match.finalIds[i];
+            line.append(" Client-").append(client).append(' ').append(match.finalScores[i]);
+            Integer rebuilt = match.scores.get(client);
+            if (rebuilt != null && rebuilt != match.finalScores[i]) {
+                mismatches.add("Client-" + client + " rebuilt " + rebuilt);
+            }
+        }
+        System.out.println(line);
+        System.out.println(mismatches.isEmpty() ? "  scores match the journal"
+                : "  MISMATCH: " + String.join(", ", mismatches));
+    }
+
+    private static String formatTime(long millis) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(millis));
+    }
+
+    // -1 at a clean end of file
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) return -1;
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Varint too long");
+    }
+}
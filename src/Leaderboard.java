@@ -0,0 +1,219 @@
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Live ranking of one room's players, updated on every score change instead of sorted
+// once at the end. A treap ordered by score (highest first, ties by seat) where every
+// node knows the size of its subtree, so adding, removing or re-scoring a player, and
+// looking up a player's rank, are O(log n), and the top K is O(log n + K).
+//
+// Ranks are shared on ties: a player's rank is one more than the number of players
+// with a strictly higher score.
+public class Leaderboard {
+    // One ranked player as of the call that returned it
+    public record Standing(ClientThread client, int clientId, int score, int rank) {
+    }
+
+    // Told about each player whose rank, or the number of players, changed since it was last told
+    public interface RankListener {
+        void rankChanged(ClientThread client, int rank, int players);
+    }
+
+    private static final class Node {
+        final ClientThread client;
+        final int seat;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        int score;
+        int size = 1;
+        Node left, right;
+        int sentRank;    // last rank passed to a RankListener, 0 if none
+
+        Node(ClientThread client, int seat) {
+            this.client = client;
+            this.seat = seat;
+            this.score = client.getScore();
+        }
+    }
+
+    private final Map<ClientThread, Node> nodes = new HashMap<>();
+    private Node root;
+    private int sentPlayers;
+
+    // Adds a player at its current score; seat breaks ties and must be unique in the room
+    public synchronized void add(ClientThread client, int seat) {
+        if (nodes.containsKey(client)) return;
+        Node node = new Node(client, seat);
+        nodes.put(client, node);
+        root = insert(root, node);
+    }
+
+    public synchronized void remove(ClientThread client) {
+        Node node = nodes.remove(client);
+        if (node != null) {
+            root = erase(root, node);
+        }
+    }
+
+    // Moves a player to its new score
+    public synchronized void update(ClientThread client) {
+        Node node = nodes.get(client);
+        if (node == null || node.score == client.getScore()) return;
+        root = erase(root, node);
+        node.score = client.getScore();
+        node.left = node.right = null;
+        node.size = 1;
+        root = insert(root, node);
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    // 1 for the leader(s), 0 if the player isn't ranked here
+    public synchronized int rank(ClientThread client) {
+        Node node = nodes.get(client);
+        return node == null ? 0 : countAbove(node.score) + 1;
+    }
+
+    // The first k players, highest first
+    public synchronized List<Standing> top(int k) {
+        List<Standing> top = new ArrayList<>(Math.min(k, nodes.size()));
+        collect(root, top, k);
+        return top;
+    }
+
+    // Every player, highest first
+    public synchronized List<ClientThread> ranked() {
+        List<Standing> all = new ArrayList<>(nodes.size());
+        collect(root, all, nodes.size());
+        List<ClientThread> ranked = new ArrayList<>(all.size());
+        for (Standing standing : all) {
+            ranked.add(standing.client());
+        }
+        return ranked;
+    }
+
+    // One in-order pass: tells the listener about every player whose rank moved (or
+    // everyone, if players joined or left) since the previous call
+    public synchronized void forEachRankChange(RankListener listener) {
+        int players = nodes.size();
+        boolean everyone = players != sentPlayers;
+        sentPlayers = players;
+        walkRanks(root, new int[] {0, 0, Integer.MIN_VALUE}, players, everyone, listener);
+    }
+
+    // position = {players visited, rank of the last score seen, last score seen}
+    private void walkRanks(Node node, int[] position, int players, boolean everyone, RankListener listener) {
+        if (node == null) return;
+        walkRanks(node.left, position, players, everyone, listener);
+        position[0]++;
+        if (node.score != position[2]) {
+            position[1] = position[0];
+            position[2] = node.score;
+        }
+        if (everyone || node.sentRank != position[1]) {
+            node.sentRank = position[1];
+            listener.rankChanged(node.client, position[1], players);
+        }
+        walkRanks(node.right, position, players, everyone, listener);
+    }
+
+    private void collect(Node node, List<Standing> out, int k) {
+        if (node == null || out.size() >= k) return;
+        collect(node.left, out, k);
+        if (out.size() >= k) return;
+        // Ties share the rank of the first player with that score
+        int rank = out.isEmpty() || out.get(out.size() - 1).score() != node.score
+                ? countAbove(node.score) + 1 : out.get(out.size() - 1).rank();
+        out.add(new Standing(node.client, node.client.getClientID(), node.score, rank));
+        collect(node.right, out, k);
+    }
+
+    // Players with a strictly higher score, who all sort to the left
+    private int countAbove(int score) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.score > score) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private static int compare(Node a, Node b) {
+        if (a.score != b.score) return a.score > b.score ? -1 : 1;
+        return Integer.compare(a.seat, b.seat);
+    }
+
+    private static Node insert(Node root, Node node) {
+        if (root == null) return node;
+        if (node.priority > root.priority) {
+            Node[] halves = split(root, node);
+            node.left = halves[0];
+            node.right = halves[1];
+            resize(node);
+            return node;
+        }
+        if (compare(node, root) < 0) {
+            root.left = insert(root.left, node);
+        } else {
+            root.right = insert(root.right, node);
+        }
+        resize(root);
+        return root;
+    }
+
+    private static Node erase(Node root, Node node) {
+        if (root == null) return null;
+        if (root == node) return merge(root.left, root.right);
+        if (compare(node, root) < 0) {
+            root.left = erase(root.left, node);
+        } else {
+            root.right = erase(root.right, node);
+        }
+        resize(root);
+        return root;
+    }
+
+    // {nodes ordered before key, the rest}
+    private static Node[] split(Node root, Node key) {
+        if (root == null) return new Node[2];
+        if (compare(root, key) < 0) {
+            Node[] halves = split(root.right, key);
+            root.right = halves[0];
+            resize(root);
+            halves[0] = root;
+            return halves;
+        }
+        Node[] halves = split(root.left, key);
+        root.left = halves[1];
+        resize(root);
+        halves[1] = root;
+        return halves;
+    }
+
+    // Every node in a sorts before every node in b
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            resize(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        resize(b);
+        return b;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void resize(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+}
@@ -0,0 +1,494 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Headless load generator: simulates many players from one process, speaking the
+// same TCP line protocol and UDP buzz as ClientWindow. Each bot reads on its own
+// virtual thread and only timestamps what it receives; buzzes and answers are fired
+// from a shared scheduler after a random think time so reading is never delayed.
+// Buzzes carry sequence numbers and are resent until the server acks them, like
+// BuzzChannel; --buzz-loss drops that fraction of buzz datagrams on purpose to exercise it.
+//
+// With --replay the bots re-enact a match recorded by GameJournal instead: one bot per
+// recorded player, buzzing and answering (right or wrong) after the same delays the real
+// player did, question by question, so captured traffic can be replayed against a new
+// server build. Questions past the end of the recording fall back to random play.
+//
+// Usage: java LoadTestClient [--host=localhost] [--port=1234] [--udp-port=1235] [--players=100]
+//                            [--buzz-probability=0.3] [--accuracy=0.7] [--think-ms=250-2000]
+//                            [--connect-per-second=500] [--room=name] [--protocol=binary|text]
+//                            [--timers=deadline|ticks] [--replay=journal.tqj] [--replay-room=name]
+//                            [--buzz-loss=0.0]
+public class LoadTestClient {
+    private final String host;
+    private final int port;
+    private final int udpPort;
+    private final int players;
+    private final double buzzProbability;
+    private final double accuracy;
+    private final int minThinkMs;
+    private final int maxThinkMs;
+    private final int connectPerSecond;
+    private final String room;
+    private final boolean binary;
+    private final boolean deadlines;
+    private final double buzzLoss;
+    private final JournalReplay.Match replay; // null unless --replay
+
+    // Correct answer letter by question text, from the same bank the server ships with
+    private final Map<String, Character> answerKey = new HashMap<>();
+
+    private final ScheduledExecutorService actions = Executors.newScheduledThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private DatagramSocket udpSocket;
+    private static final int BUZZ_ATTEMPTS = 5;
+    private static final long BUZZ_RETRY_MILLIS = 100; // doubled each resend
+    // Buzzes waiting for their ack, by sequence number; the value is when the first copy went out
+    private final Map<Long, Long> unacked = new ConcurrentHashMap<>();
+    private final AtomicLong nextBuzzSeq = new AtomicLong(1);
+
+    // When the first bot saw each question, to measure fan-out spread
+    private final Map<String, Long> firstDelivery = new ConcurrentHashMap<>();
+
+    private final LatencyRecorder questionDelivery = new LatencyRecorder("question delivery spread");
+    private final LatencyRecorder verdictLatency = new LatencyRecorder("ACK/NAK after buzz window");
+    private final LatencyRecorder scoringLatency = new LatencyRecorder("answer -> correct/wrong");
+    private final LatencyRecorder buzzAckLatency = new LatencyRecorder("buzz -> UDP ack, with resends");
+
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger connectFailures = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+    private final AtomicInteger buzzesSent = new AtomicInteger();
+    private final AtomicInteger buzzResends = new AtomicInteger();
+    private final AtomicInteger buzzesLost = new AtomicInteger(); // never acked
+    private final AtomicInteger udpAcks = new AtomicInteger();
+    private final AtomicInteger acks = new AtomicInteger();
+    private final AtomicInteger naks = new AtomicInteger();
+    private final AtomicInteger correct = new AtomicInteger();
+    private final AtomicInteger wrong = new AtomicInteger();
+    private final AtomicInteger standingsReceived = new AtomicInteger();
+    private final AtomicInteger ranksReceived = new AtomicInteger();
+    private final AtomicBoolean reported = new AtomicBoolean();
+
+    public static void main(String[] args) throws Exception {
+        new LoadTestClient(args).run();
+    }
+
+    public LoadTestClient(String[] args) throws IOException {
+        host = flag(args, "host", "localhost");
+        port = Integer.parseInt(flag(args, "port", "1234"));
+        udpPort = Integer.parseInt(flag(args, "udp-port", "1235"));
+        String journal = flag(args, "replay", null);
+        replay = journal == null ? null : pickMatch(Paths.get(journal), flag(args, "replay-room", null));
+        players = replay != null ? replay.players.size() : Integer.parseInt(flag(args, "players", "100"));
+        buzzProbability = Double.parseDouble(flag(args, "buzz-probability", "0.3"));
+        accuracy = Double.parseDouble(flag(args, "accuracy", "0.7"));
+        String[] think = flag(args, "think-ms", "250-2000").split("-");
+        minThinkMs = Integer.parseInt(think[0]);
+        maxThinkMs = Integer.parseInt(think[think.length - 1]);
+        connectPerSecond = Integer.parseInt(flag(args, "connect-per-second", "500"));
+        room = flag(args, "room", null);
+        binary = !flag(args, "protocol", "binary").equals("text");
+        deadlines = !flag(args, "timers", "deadline").equals("ticks");
+        buzzLoss = Double.parseDouble(flag(args, "buzz-loss", "0"));
+        loadAnswerKey();
+    }
+
+    public void run() throws Exception {
+        udpSocket = new DatagramSocket();
+        Thread.ofVirtual().name("buzz-acks").start(this::receiveAcks);
+        // Ctrl-C still prints what was measured so far
+        Runtime.getRuntime().addShutdownHook(new Thread(this::report));
+        System.out.println("Starting " + players + " bots against " + host + ":" + port
+                + " using the " + (binary ? "binary" : "text") + " protocol");
+
+        List<Thread> bots = new ArrayList<>(players);
+        long connectInterval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, connectPerSecond);
+        long nextConnect = System.nanoTime();
+        for (int i = 0; i < players; i++) {
+            long wait = nextConnect - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            nextConnect += connectInterval;
+
+            Bot bot = new Bot(replay != null ? replay.players.get(i) : -1);
+            bots.add(Thread.ofVirtual().name("bot-" + i).start(bot::play));
+        }
+
+        for (Thread bot : bots) {
+            bot.join();
+        }
+        actions.shutdownNow();
+        udpSocket.close();
+        report();
+    }
+
+    private void report() {
+        if (!reported.compareAndSet(false, true)) return;
+        System.out.println();
+        System.out.println("Bots: " + connected.get() + " connected, " + connectFailures.get()
+                + " failed to connect, " + finished.get() + " saw the game end");
+        System.out.println("Buzzes sent: " + buzzesSent.get() + ", ACK: " + acks.get() + ", NAK: " + naks.get());
+        System.out.println("UDP buzz acks: " + udpAcks.get() + ", resends: " + buzzResends.get()
+                + ", never acked: " + buzzesLost.get());
+        System.out.println("Answers: " + correct.get() + " correct, " + wrong.get() + " wrong");
+        System.out.println("Leaderboard updates: " + standingsReceived.get() + " standings, "
+                + ranksReceived.get() + " rank changes");
+        questionDelivery.print();
+        verdictLatency.print();
+        scoringLatency.print();
+        buzzAckLatency.print();
+    }
+
+    // "ack <seq>" replies to every bot's buzzes arrive on the one shared socket
+    private void receiveAcks() {
+        byte[] buffer = new byte[64];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!udpSocket.isClosed()) {
+            try {
+                udpSocket.receive(packet);
+                String reply = new String(buffer, 0, packet.getLength(), StandardCharsets.US_ASCII).trim();
+                if (!reply.startsWith("ack ")) continue;
+                Long sentAt = unacked.remove(Long.parseLong(reply.substring(4)));
+                if (sentAt != null) {
+                    udpAcks.incrementAndGet();
+                    buzzAckLatency.record(System.nanoTime() - sentAt);
+                }
+            } catch (NumberFormatException e) {
+                // not an ack we sent
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void loadAnswerKey() {
+        try (InputStream is = LoadTestClient.class.getResourceAsStream("/Questions.txt")) {
+            if (is == null) return;
+            BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+            String line;
+            while ((line = br.readLine()) != null) {
+                try {
+                    Question q = new Question(line);
+                    answerKey.put(q.getQuestionText(), q.getCorrectAnswer());
+                } catch (RuntimeException e) {
+                    // the server skips this line too
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Answer key unavailable, bots will guess: " + e.getMessage());
+        }
+    }
+
+    // The named match, or the first one that got as far as a question
+    private static JournalReplay.Match pickMatch(Path journal, String room) throws IOException {
+        for (JournalReplay.Match match : JournalReplay.read(journal)) {
+            if (room != null ? room.equals(match.room) : !match.rounds.isEmpty()) {
+                System.out.println("Replaying " + match.room + ": " + match.players.size() + " players, "
+                        + match.rounds.size() + " questions");
+                return match;
+            }
+        }
+        throw new IllegalArgumentException("No " + (room != null ? "match named " + room : "played match")
+                + " in " + journal);
+    }
+
+    private int thinkTime() {
+        return ThreadLocalRandom.current().nextInt(minThinkMs, maxThinkMs + 1);
+    }
+
+    private static String flag(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    // One simulated player
+    private class Bot implements WireProtocol.Listener {
+        private final int recordedId;          // player this bot re-enacts, -1 when not replaying
+        private int questionsSeen;
+        private volatile JournalReplay.Round recorded; // current question in the recording, if any
+        private Socket socket;
+        private PrintWriter out;
+        private WireProtocol.Reader reader;
+        private volatile String token = "";
+        private volatile long buzzWindowClosedAt;
+        private volatile long answeredAt;
+        private volatile long clockOffset;     // server clock minus ours, in ms
+        private long bestClockRtt = Long.MAX_VALUE;
+        private volatile char correctAnswer;
+        private boolean done;
+
+        Bot(int recordedId) {
+            this.recordedId = recordedId;
+        }
+
+        void play() {
+            try {
+                socket = new Socket(host, port);
+            } catch (IOException e) {
+                connectFailures.incrementAndGet();
+                return;
+            }
+            connected.incrementAndGet();
+
+            try {
+                reader = new WireProtocol.Reader(socket.getInputStream());
+                out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+                // A fresh player each run, so stats (--stats) get written without piling onto one record
+                send("PLAYER " + Long.toHexString(ThreadLocalRandom.current().nextLong() | 1));
+                if (room != null) {
+                    send("JOIN " + room);
+                }
+
+                while (!done && reader.read(this)) {
+                    // callbacks below do the work
+                }
+            } catch (IOException e) {
+                // server closed the connection
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+        }
+
+        @Override
+        public void onLine(String line) {
+            if (line.startsWith("PROTOCOLS ")) {
+                if (binary) send(WireProtocol.BINARY);
+                if (deadlines && line.contains(" deadlines")) {
+                    send(WireProtocol.DEADLINES);
+                    send("CLOCK " + System.currentTimeMillis());
+                }
+            } else if (line.equals(WireProtocol.BINARY)) {
+                reader.switchToBinary();
+            } else if (line.startsWith("TOKEN ")) {
+                token = line.substring("TOKEN ".length()).trim();
+            } else if (line.startsWith("QUESTION|")) {
+                String[] parts = line.split("\\|", 7);
+                if (parts.length >= 3) onQuestion(parts[1], parts[2], null);
+            } else if (line.startsWith("TIMER:")) {
+                onTimer(Integer.parseInt(line.substring("TIMER:".length())));
+            } else if (line.startsWith("PHASE ")) {
+                String[] parts = line.split(" ");
+                onPhase(parts[1], Integer.parseInt(parts[2]), Long.parseLong(parts[3]));
+            } else if (line.startsWith("CLOCK ")) {
+                String[] parts = line.split(" ");
+                onClock(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            } else if (line.equals("ACK")) {
+                onAck();
+            } else if (line.equals("NAK")) {
+                onNak();
+            } else if (line.startsWith("correct ")) {
+                onScore(WireProtocol.CORRECT, 0);
+            } else if (line.startsWith("wrong ")) {
+                onScore(WireProtocol.WRONG, 0);
+            } else if (line.startsWith("STANDINGS|")) {
+                onStandings(null, null, null);
+            } else if (line.startsWith("RANK ")) {
+                onRank(0, 0);
+            } else if (line.equals("Game Over!") || line.equals("not_enough_players")
+                    || line.equalsIgnoreCase("killswitch")) {
+                finished.incrementAndGet();
+                done = true;
+            }
+        }
+
+        @Override
+        public void onTimer(int secondsLeft) {
+            if (secondsLeft == 0) buzzWindowClosedAt = System.nanoTime();
+        }
+
+        @Override
+        public void onPhase(String name, int seconds, long deadlineMillis) {
+            if (!name.equals("buzz")) return;
+            // When the buzz window closes, translated onto our nanoTime clock
+            long localDeadline = deadlineMillis - clockOffset;
+            buzzWindowClosedAt = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(localDeadline - System.currentTimeMillis());
+        }
+
+        @Override
+        public void onClock(long clientMillis, long serverMillis) {
+            long now = System.currentTimeMillis();
+            long rtt = now - clientMillis;
+            if (rtt >= 0 && rtt < bestClockRtt) {
+                bestClockRtt = rtt;
+                clockOffset = serverMillis - (clientMillis + now) / 2;
+            }
+        }
+
+        @Override
+        public void onQuestion(String number, String text, String[] options) {
+            long now = System.nanoTime();
+            Long first = firstDelivery.putIfAbsent(number + "|" + text, now);
+            questionDelivery.record(first == null ? 0 : now - first);
+
+            Character answer = answerKey.get(text);
+            correctAnswer = answer != null ? answer : 'A';
+            buzzWindowClosedAt = 0;
+
+            JournalReplay.Round round = replay != null && questionsSeen < replay.rounds.size()
+                    ? replay.rounds.get(questionsSeen) : null;
+            questionsSeen++;
+            recorded = round;
+
+            int buzzRound = WireProtocol.questionRound(number);
+            if (round != null) {
+                long delay = round.buzzMicros(recordedId);
+                if (delay >= 0) actions.schedule(() -> buzz(buzzRound), delay, TimeUnit.MICROSECONDS);
+            } else if (ThreadLocalRandom.current().nextDouble() < buzzProbability) {
+                actions.schedule(() -> buzz(buzzRound), thinkTime(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void onAck() {
+            onVerdict(true);
+            JournalReplay.Round round = recorded;
+            if (round != null && round.winner == recordedId) {
+                // Same answer delay and outcome as the recording; a recorded timeout stays silent
+                if (round.answer != null) {
+                    boolean right = round.answeredCorrectly;
+                    actions.schedule(() -> answer(right), Math.max(0, round.answerMicros - round.winnerMicros),
+                            TimeUnit.MICROSECONDS);
+                }
+            } else {
+                boolean right = ThreadLocalRandom.current().nextDouble() < accuracy;
+                actions.schedule(() -> answer(right), thinkTime(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void onNak() {
+            onVerdict(false);
+        }
+
+        private void onVerdict(boolean ack) {
+            (ack ? acks : naks).incrementAndGet();
+            if (buzzWindowClosedAt != 0) verdictLatency.record(System.nanoTime() - buzzWindowClosedAt);
+        }
+
+        @Override
+        public void onScore(int kind, int score) {
+            if (kind != WireProtocol.CORRECT && kind != WireProtocol.WRONG) return;
+            (kind == WireProtocol.CORRECT ? correct : wrong).incrementAndGet();
+            if (answeredAt != 0) scoringLatency.record(System.nanoTime() - answeredAt);
+            answeredAt = 0;
+        }
+
+        @Override
+        public void onFinalScore(int score) {
+        }
+
+        @Override
+        public void onScoreboard(int[] clientIds, int[] scores) {
+        }
+
+        @Override
+        public void onStandings(int[] ranks, int[] clientIds, int[] scores) {
+            standingsReceived.incrementAndGet();
+        }
+
+        @Override
+        public void onRank(int rank, int players) {
+            ranksReceived.incrementAndGet();
+        }
+
+        // Names the question's round, so the server drops a resend that arrives after it
+        private void buzz(int round) {
+            if (token.isEmpty()) {
+                sendBuzz("buzz".getBytes(StandardCharsets.US_ASCII));
+                buzzesSent.incrementAndGet();
+                return;
+            }
+            long seq = nextBuzzSeq.getAndIncrement();
+            byte[] payload = ("buzz " + token + " " + seq + (round > 0 ? " " + round : ""))
+                    .getBytes(StandardCharsets.US_ASCII);
+            unacked.put(seq, System.nanoTime());
+            buzzesSent.incrementAndGet();
+            resendUntilAcked(seq, payload, 1);
+        }
+
+        private void resendUntilAcked(long seq, byte[] payload, int attempt) {
+            if (!unacked.containsKey(seq)) return;
+            if (attempt > BUZZ_ATTEMPTS) {
+                if (unacked.remove(seq) != null) buzzesLost.incrementAndGet();
+                return;
+            }
+            if (attempt > 1) buzzResends.incrementAndGet();
+            sendBuzz(payload);
+            actions.schedule(() -> resendUntilAcked(seq, payload, attempt + 1),
+                    BUZZ_RETRY_MILLIS << (attempt - 1), TimeUnit.MILLISECONDS);
+        }
+
+        private void sendBuzz(byte[] payload) {
+            if (ThreadLocalRandom.current().nextDouble() < buzzLoss) return; // dropped on purpose
+            try {
+                udpSocket.send(new DatagramPacket(payload, payload.length, socket.getInetAddress(), udpPort));
+            } catch (IOException e) {
+                // lost buzz, same as a dropped datagram
+            }
+        }
+
+        private void answer(boolean right) {
+            char choice = correctAnswer;
+            if (!right) {
+                choice = (char) ('A' + (choice - 'A' + 1 + ThreadLocalRandom.current().nextInt(3)) % 4);
+            }
+            answeredAt = System.nanoTime();
+            send(String.valueOf(choice));
+        }
+
+        private void send(String line) {
+            synchronized (this) {
+                out.println(line);
+            }
+        }
+    }
+
+    // Collects samples for one metric and prints percentiles at the end
+    private static class LatencyRecorder {
+        private final String name;
+        private long[] samples = new long[1024];
+        private int count;
+
+        LatencyRecorder(String name) {
+            this.name = name;
+        }
+
+        synchronized void record(long nanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+        }
+
+        synchronized void print() {
+            if (count == 0) {
+                System.out.println(name + ": no samples");
+                return;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            System.out.printf("%s (ms, n=%d): p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n", name, count,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    sorted[count - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Console logging off the game threads. Lines are queued and a single daemon thread
+// writes them in batches, so a slow terminal never holds up an event loop or the game
+// clock; if the queue fills, lines are dropped and counted rather than waited on.
+//
+// Per-event lines (messages, buzzes, answers, joins) are sampled with event(): the first
+// eventsPerSecond events each second are logged and the rest only counted, so a quiet
+// game logs everything and a load test doesn't drown the console.
+public final class Log {
+    private static final int QUEUE_CAPACITY = 8192;
+
+    private static final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong suppressed = new AtomicLong();
+    private static volatile int eventsPerSecond = 20;
+    // Current second (System.nanoTime() / 1s) and how many events were logged in it
+    private static final AtomicLong window = new AtomicLong(Long.MIN_VALUE);
+    private static final AtomicLong windowEvents = new AtomicLong();
+
+    static {
+        Thread writer = new Thread(Log::drain, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flushRemaining, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    // 0 logs no per-event lines at all
+    public static void setEventsPerSecond(int limit) {
+        eventsPerSecond = limit;
+    }
+
+    // Queues a line that is always logged (room lifecycle, errors)
+    public static void info(String line) {
+        if (!queue.offer(line)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // True if this event should be logged; callers build the line only then:
+    //     if (Log.event()) Log.info("Client-" + id + ": " + message);
+    public static boolean event() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        long current = window.get();
+        if (second != current && window.compareAndSet(current, second)) {
+            windowEvents.set(0);
+            long missed = suppressed.getAndSet(0);
+            if (missed > 0) {
+                info("(" + missed + " event(s) not logged in the last second)");
+            }
+        }
+        if (windowEvents.incrementAndGet() <= eventsPerSecond) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    private static void drain() {
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), false, StandardCharsets.UTF_8);
+        List<String> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                write(out, batch);
+            }
+        } catch (InterruptedException e) {
+            // exiting
+        }
+    }
+
+    private static void flushRemaining() {
+        List<String> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        write(System.out, batch);
+    }
+
+    private static void write(PrintStream out, List<String> batch) {
+        for (String line : batch) {
+            out.println(line);
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            out.println("(" + lost + " log line(s) dropped, the console couldn't keep up)");
+        }
+        out.flush();
+        batch.clear();
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// A question bank compiled by QuestionBankCompiler, memory-mapped and decoded one
+// question at a time by offset. Nothing is parsed at open and nothing is kept on the
+// heap, so startup time and heap use stay flat however many questions the file holds;
+// the OS pages in only the entries that are actually played. The most recently used
+// questions are kept decoded in a bounded LRU, so rooms playing the same question share
+// one Question and its cached wire form without the whole bank ending up on the heap.
+//
+// File layout (big-endian):
+//   header      magic "TQB1", int version, int count, long index offset, long categories offset
+//   records     per question: u16-length UTF-8 number, text, then u8 option count and the
+//               options, then the correct answer letter as one byte
+//   index       per question, ENTRY_SIZE bytes: long record offset, long id (Question.idOf),
+//               u8 category number, u8 difficulty
+//   categories  u16 count, then each name as a u16-length UTF-8 string
+// The index doubles as compact metadata: a deck can filter and sample the whole bank
+// by category, difficulty and id without decoding a single question. Records never
+// straddle a CHUNK_SIZE boundary, so each one decodes from a single mapping.
+public class MappedQuestionBank extends AbstractList<Question> implements RandomAccess, Closeable {
+    public static final int MAGIC = 0x54514231; // "TQB1"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 28;
+    public static final int ENTRY_SIZE = 18;
+    public static final long CHUNK_SIZE = 1L << 30;
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private final FileChannel channel;
+    private final int count;
+    private final ByteBuffer index;
+    private final MappedByteBuffer[] chunks;
+    private final String[] categories;
+    private final Map<Integer, Question> recent; // LRU of decoded questions, guarded by itself
+
+    public static MappedQuestionBank open(Path file) throws IOException {
+        return open(file, DEFAULT_CACHE_SIZE);
+    }
+
+    // cacheSize is how many decoded questions to keep; 0 decodes on every get
+    public static MappedQuestionBank open(Path file, int cacheSize) throws IOException {
+        return new MappedQuestionBank(FileChannel.open(file, StandardOpenOption.READ), cacheSize);
+    }
+
+    private MappedQuestionBank(FileChannel channel, int cacheSize) throws IOException {
+        this.channel = channel;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Question> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a compiled question bank");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Question bank version " + version + ", expected " + VERSION
+                        + "; recompile it with QuestionBankCompiler");
+            }
+            count = header.getInt();
+            long indexOffset = header.getLong();
+            long categoriesOffset = header.getLong();
+            if (count < 0 || indexOffset + (long) ENTRY_SIZE * count > categoriesOffset
+                    || categoriesOffset > channel.size()) {
+                throw new IOException("Truncated question bank");
+            }
+
+            index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) ENTRY_SIZE * count);
+            categories = readCategories(channel.map(FileChannel.MapMode.READ_ONLY, categoriesOffset,
+                    channel.size() - categoriesOffset));
+
+            chunks = new MappedByteBuffer[(int) ((indexOffset + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, indexOffset - start));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static String[] readCategories(ByteBuffer table) {
+        String[] names = new String[table.getShort() & 0xFFFF];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = readString(table);
+        }
+        return names;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    // The question at this position, decoded unless it was used recently
+    @Override
+    public Question get(int i) {
+        Objects.checkIndex(i, count);
+        synchronized (recent) {
+            Question cached = recent.get(i);
+            if (cached != null) return cached;
+        }
+
+        Question q = decode(i);
+        synchronized (recent) {
+            // Another thread may have decoded it meanwhile; keep one copy so they share it
+            Question raced = recent.putIfAbsent(i, q);
+            return raced != null ? raced : q;
+        }
+    }
+
+    private Question decode(int i) {
+        long offset = index.getLong(i * ENTRY_SIZE);
+
+        // A private view per call, so threads can decode from the shared mapping at once
+        ByteBuffer record = chunks[(int) (offset / CHUNK_SIZE)].duplicate();
+        record.position((int) (offset % CHUNK_SIZE));
+
+        String number = readString(record);
+        String text = readString(record);
+        String[] options = new String[record.get() & 0xFF];
+        for (int o = 0; o < options.length; o++) {
+            options[o] = readString(record);
+        }
+        char correct = (char) record.get();
+        return new Question(number, text, options, correct, getCategory(i), getDifficulty(i));
+    }
+
+    // Metadata straight from the index, without decoding the question
+
+    public long getId(int i) {
+        return index.getLong(i * ENTRY_SIZE + 8);
+    }
+
+    public String getCategory(int i) {
+        return categories[getCategoryNumber(i)];
+    }
+
+    public int getDifficulty(int i) {
+        return index.get(i * ENTRY_SIZE + 17) & 0xFF;
+    }
+
+    // Category as its number in getCategories(), for comparing without a String
+    public int getCategoryNumber(int i) {
+        return index.get(i * ENTRY_SIZE + 16) & 0xFF;
+    }
+
+    public List<String> getCategories() {
+        return List.of(categories);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// What it takes to pick a match up again after a restart: its deck, which question it
+// was on and the phase that was running, and every player's session token, score and
+// match stats.
+// Encoded with WireProtocol's varint framing; a snapshot is just a list of these.
+public final class MatchState {
+    private static final int FORMAT = 2; // first byte of an encoded snapshot; 1 had no match stats
+
+    public final String room;
+    public final int questionIndex;        // deck position of the question being played
+    public final String phase;             // "buzz", "answer", "cooldown" or "" between phases
+    public final long phaseDeadlineMillis; // wall clock, 0 if no phase
+    public final List<Question> deck;
+    public final List<Player> players;
+
+    public static final class Player {
+        public final long token;
+        public final int clientId;
+        public final int score;
+        public final ClientThread.MatchStats match; // null from a format 1 snapshot
+
+        public Player(long token, int clientId, int score, ClientThread.MatchStats match) {
+            this.token = token;
+            this.clientId = clientId;
+            this.score = score;
+            this.match = match;
+        }
+
+        public Player(ClientThread client) {
+            this(client.getSessionToken(), client.getClientID(), client.getScore(), client.getMatchStats());
+        }
+    }
+
+    public MatchState(String room, int questionIndex, String phase, long phaseDeadlineMillis,
+                      List<Question> deck, List<Player> players) {
+        this.room = room;
+        this.questionIndex = questionIndex;
+        this.phase = phase;
+        this.phaseDeadlineMillis = phaseDeadlineMillis;
+        this.deck = deck;
+        this.players = players;
+    }
+
+    // One snapshot holding every running match, with the time it was taken
+    public static byte[] encode(List<MatchState> matches, long takenMillis) {
+        WireProtocol.FrameBuilder out = WireProtocol.frame(FORMAT).varlong(takenMillis).varint(matches.size());
+        for (MatchState match : matches) {
+            out.string(match.room).varint(match.questionIndex).string(match.phase).varlong(match.phaseDeadlineMillis);
+            out.varint(match.deck.size());
+            for (Question q : match.deck) {
+                out.string(q.getQuestionNumber()).string(q.getQuestionText()).varint(q.getOptions().length);
+                for (String option : q.getOptions()) {
+                    out.string(option);
+                }
+                out.varint(q.getCorrectAnswer()).string(q.getCategory()).varint(q.getDifficulty());
+            }
+            out.varint(match.players.size());
+            for (Player player : match.players) {
+                out.varlong(player.token).varint(player.clientId).zigzag(player.score);
+                ClientThread.MatchStats stats = player.match != null ? player.match
+                        : new ClientThread.MatchStats(0, 0, 0, 0, 0, 0);
+                out.zigzag(stats.score()).varint(stats.correct()).varint(stats.wrong()).varint(stats.penalties())
+                        .varint(stats.buzzes()).varlong(stats.buzzNanos());
+            }
+        }
+        return out.build();
+    }
+
+    // Reverses encode; the time the snapshot was taken goes in takenMillis[0]
+    public static List<MatchState> decode(byte[] snapshot, long[] takenMillis) throws IOException {
+        WireProtocol.Cursor in = new WireProtocol.Cursor(snapshot, snapshot.length);
+        in.readVarint(); // frame length
+        int format = in.readByte();
+        if (format != 1 && format != FORMAT) throw new IOException("Unknown snapshot format");
+        takenMillis[0] = in.readVarlong();
+
+        int count = in.readVarint();
+        List<MatchState> matches = new ArrayList<>(count);
+        for (int m = 0; m < count; m++) {
+            String room = in.readString();
+            int questionIndex = in.readVarint();
+            String phase = in.readString();
+            long deadline = in.readVarlong();
+
+            int deckSize = in.readVarint();
+            List<Question> deck = new ArrayList<>(deckSize);
+            for (int i = 0; i < deckSize; i++) {
+                String number = in.readString();
+                String text = in.readString();
+                String[] options = new String[in.readVarint()];
+                for (int o = 0; o < options.length; o++) {
+                    options[o] = in.readString();
+                }
+                char correct = (char) in.readVarint();
+                deck.add(new Question(number, text, options, correct, in.readString(), in.readVarint()));
+            }
+
+            int playerCount = in.readVarint();
+            List<Player> players = new ArrayList<>(playerCount);
+            for (int i = 0; i < playerCount; i++) {
+                long token = in.readVarlong();
+                int clientId = in.readVarint();
+                int score = in.readZigzag();
+                ClientThread.MatchStats match = format == 1 ? null : new ClientThread.MatchStats(in.readZigzag(),
+                        in.readVarint(), in.readVarint(), in.readVarint(), in.readVarint(), in.readVarlong());
+                players.add(new Player(token, clientId, score, match));
+            }
+            matches.add(new MatchState(room, questionIndex, phase, deadline, deck, players));
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,166 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Server-wide counters, gauges and latency histograms, served in the Prometheus text
+// format by serve(). Recording never locks: counters are LongAdders, histograms bump
+// one slot of an atomic array, and gauges are only read when someone scrapes.
+public final class Metrics {
+    private static final List<Metric> registry = new CopyOnWriteArrayList<>();
+
+    public static final LongAdder MESSAGES_RECEIVED = counter("trivia_messages_received_total",
+            "Lines received from players");
+    public static final LongAdder MESSAGES_SENT = counter("trivia_messages_sent_total",
+            "Messages queued to players, timer ticks included");
+    public static final LongAdder TICKS_DROPPED = counter("trivia_timer_ticks_dropped_total",
+            "Timer ticks dropped or coalesced because a player's send queue was backed up");
+    public static final Histogram BUZZ_TO_ACK = histogram("trivia_buzz_to_ack_seconds",
+            "From the winning buzz arriving to its ACK being queued");
+    public static final Histogram BROADCAST = histogram("trivia_question_broadcast_seconds",
+            "Time to queue a question to every player in a room");
+    public static final Histogram TIMER_DRIFT = histogram("trivia_timer_drift_seconds",
+            "How late game clock ticks and deadlines run");
+    public static final LongAdder JOURNAL_WRITTEN = counter("trivia_journal_events_written_total",
+            "Game events written to the journal");
+    public static final LongAdder JOURNAL_DROPPED = counter("trivia_journal_events_dropped_total",
+            "Game events dropped because the journal writer was a full ring behind");
+    public static final Histogram JOURNAL_FSYNC = histogram("trivia_journal_fsync_seconds",
+            "Time for one group fsync of the journal");
+    public static final Histogram STATS_WRITE = histogram("trivia_player_stats_write_seconds",
+            "Time to add one finished match to the player stats file");
+
+    private interface Metric {
+        void write(StringBuilder out);
+    }
+
+    private Metrics() {
+    }
+
+    public static LongAdder counter(String name, String help) {
+        LongAdder adder = new LongAdder();
+        counter(name, help, adder::sum);
+        return adder;
+    }
+
+    // A counter kept elsewhere, e.g. UdpBuzzReceiver's
+    public static void counter(String name, String help, LongSupplier value) {
+        registry.add(out -> header(out, name, help, "counter").append(name).append(' ')
+                .append(value.getAsLong()).append('\n'));
+    }
+
+    public static void gauge(String name, String help, LongSupplier value) {
+        registry.add(out -> header(out, name, help, "gauge").append(name).append(' ')
+                .append(value.getAsLong()).append('\n'));
+    }
+
+    public static Histogram histogram(String name, String help) {
+        Histogram histogram = new Histogram();
+        registry.add(out -> histogram.write(header(out, name, help, "summary"), name));
+        return histogram;
+    }
+
+    private static StringBuilder header(StringBuilder out, String name, String help, String type) {
+        return out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                  .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // Every metric in the Prometheus text exposition format
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : registry) {
+            metric.write(out);
+        }
+        return out.toString();
+    }
+
+    // Serves scrape() at http://127.0.0.1:port/metrics; local only, as it has no auth
+    public static HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    // Latency histogram in the style of HdrHistogram: microsecond values are counted in
+    // log-linear buckets, SUB_BUCKETS per power of two, so every recorded value is kept
+    // to within 1/SUB_BUCKETS (12.5%) from a microsecond up to MAX_MICROS in a fixed
+    // few hundred slots. Quantiles are worked out at scrape time.
+    public static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final long MAX_MICROS = 1L << 36; // about 19 hours
+        private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+        private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_MICROS) + 1);
+        private final LongAdder sumMicros = new LongAdder();
+
+        private Histogram() {
+        }
+
+        public void recordNanos(long nanos) {
+            long micros = Math.min(MAX_MICROS, Math.max(0, nanos / 1000));
+            counts.incrementAndGet(indexOf(micros));
+            sumMicros.add(micros);
+        }
+
+        public void recordSince(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        // Values below 2 * SUB_BUCKETS get a bucket each; above that, the top SUB_BITS + 1
+        // bits pick the bucket within the value's power of two
+        private static int indexOf(long micros) {
+            if (micros < 2 * SUB_BUCKETS) return (int) micros;
+            int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+            return shift * SUB_BUCKETS + (int) (micros >>> shift);
+        }
+
+        // Midpoint of the bucket's range
+        private static double valueOf(int index) {
+            if (index < 2 * SUB_BUCKETS) return index;
+            int shift = index / SUB_BUCKETS - 1;
+            long low = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+            return low + ((1L << shift) - 1) / 2.0;
+        }
+
+        private void write(StringBuilder out, String name) {
+            long[] snapshot = new long[counts.length()];
+            long total = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                   .append(total == 0 ? "NaN" : String.valueOf(valueOf(bucketAt(snapshot, quantile, total)) / 1e6))
+                   .append('\n');
+            }
+            out.append(name).append("_sum ").append(sumMicros.sum() / 1e6).append('\n');
+            out.append(name).append("_count ").append(total).append('\n');
+        }
+
+        private static int bucketAt(long[] snapshot, double quantile, long total) {
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) return i;
+            }
+            return snapshot.length - 1;
+        }
+    }
+}
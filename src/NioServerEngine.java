@@ -0,0 +1,353 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Non-blocking alternative to the thread-per-client engine. A small fixed set of
+// event loops accept connections, split incoming bytes into lines and flush
+// outgoing messages, so idle players cost a channel and a few buffers instead
+// of a thread. Game logic is shared with the blocking engine through ClientThread.
+public class NioServerEngine {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 1024;
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private int nextLoop = 0; // only touched by the accepting loop
+
+    public NioServerEngine(int port, int loopCount) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        serverChannel.configureBlocking(false);
+
+        loops = new EventLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        // The first loop also accepts and hands channels out round-robin
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    public void close() {
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+
+    // One selector thread serving many channels
+    private class EventLoop extends Thread {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private volatile boolean running = true;
+
+        EventLoop(int index) throws IOException {
+            super("nio-loop-" + index);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == this;
+        }
+
+        // Runs a task on this loop's thread
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    runTasks();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+
+                        NioConnection conn = (NioConnection) key.attachment();
+                        if (key.isReadable()) read(conn);
+                        if (key.isValid() && key.isWritable()) conn.flush();
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    System.out.println("NIO loop error: " + e.getMessage());
+                }
+            }
+
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                EventLoop target = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+
+                SocketChannel accepted = channel;
+                if (target == this) {
+                    target.register(accepted);
+                } else {
+                    target.execute(() -> target.register(accepted));
+                }
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                NioConnection conn = new NioConnection(this, channel);
+                conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+
+                ClientThread client = new ClientThread(conn, TriviaServer.nextClientID());
+                conn.client = client;
+                TriviaServer.registerClient(client);
+            } catch (IOException e) {
+                System.out.println("Failed to register client channel: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+
+        // Reads whatever is available and dispatches each complete line
+        private void read(NioConnection conn) {
+            readBuffer.clear();
+            int n;
+            try {
+                n = conn.channel.read(readBuffer);
+            } catch (IOException e) {
+                n = -1;
+            }
+            if (n < 0) {
+                conn.disconnect();
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    String line = conn.takeLine();
+                    try {
+                        conn.client.handleMessage(line);
+                    } catch (IOException | RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                    if (!conn.channel.isOpen()) return;
+                } else if (!conn.appendToLine(b)) {
+                    if (Log.event()) Log.info("Client-" + conn.client.getClientID() + " sent an oversized line.");
+                    conn.disconnect();
+                    return;
+                }
+            }
+        }
+    }
+
+    // A player's channel plus its pending partial line and outgoing messages
+    private static class NioConnection implements ClientConnection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final InetAddress address;
+        private final OutboundQueue outbound = TriviaServer.newOutboundQueue();
+        private ByteBuffer writing; // frame partially written to the socket
+        private SelectionKey key;
+        private ClientThread client;
+
+        // Partial line bytes, only allocated while a line is split across reads
+        private byte[] line;
+        private int lineLength;
+
+        private boolean flushScheduled;
+        private boolean closeRequested;
+
+        NioConnection(EventLoop loop, SocketChannel channel) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            this.address = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+        }
+
+        boolean appendToLine(byte b) {
+            if (line == null) {
+                line = new byte[64];
+            } else if (lineLength == line.length) {
+                if (line.length >= MAX_LINE_LENGTH) return false;
+                line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
+            }
+            line[lineLength++] = b;
+            return true;
+        }
+
+        String takeLine() {
+            int length = lineLength;
+            if (length > 0 && line[length - 1] == '\r') length--;
+            String result = line == null ? "" : new String(line, 0, length, StandardCharsets.UTF_8);
+            line = null;
+            lineLength = 0;
+            return result;
+        }
+
+        @Override
+        public void send(String message) {
+            sendFrame((message + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void sendFrame(byte[] frame) {
+            enqueue(frame, false);
+        }
+
+        @Override
+        public void sendTick(byte[] frame) {
+            enqueue(frame, true);
+        }
+
+        private void enqueue(byte[] frame, boolean tick) {
+            synchronized (this) {
+                if (closeRequested || !channel.isOpen()) return;
+                if (!outbound.offer(frame, tick)) {
+                    if (Log.event()) Log.info("Client-" + client.getClientID() + " is a slow consumer: send queue full, disconnecting.");
+                    outbound.clear();
+                    closeRequested = true;
+                    loop.execute(this::disconnect);
+                    return;
+                }
+            }
+            requestFlush();
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return address;
+        }
+
+        // Closes once everything already queued (e.g. "killswitch") has been written
+        @Override
+        public void close() {
+            synchronized (this) {
+                closeRequested = true;
+            }
+            requestFlush();
+        }
+
+        private void requestFlush() {
+            if (loop.inLoop()) {
+                flush();
+                return;
+            }
+            synchronized (this) {
+                if (flushScheduled) return;
+                flushScheduled = true;
+            }
+            loop.execute(this::flush);
+        }
+
+        // Writes as much as the socket accepts; waits for OP_WRITE for the rest
+        void flush() {
+            boolean failed = false;
+            boolean closeNow;
+            synchronized (this) {
+                flushScheduled = false;
+                if (!channel.isOpen()) return;
+                try {
+                    while (true) {
+                        if (writing == null) {
+                            byte[] frame = outbound.poll();
+                            if (frame == null) break;
+                            // Each connection gets its own view over the shared frame bytes, no copy
+                            writing = ByteBuffer.wrap(frame);
+                        }
+                        channel.write(writing);
+                        if (writing.hasRemaining()) break;
+                        writing = null;
+                    }
+                    key.interestOps(writing == null
+                            ? SelectionKey.OP_READ
+                            : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                } catch (IOException e) {
+                    outbound.clear();
+                    writing = null;
+                    failed = true;
+                }
+                closeNow = closeRequested && writing == null;
+            }
+
+            if (failed) {
+                disconnect();
+            } else if (closeNow) {
+                closeChannel();
+            }
+        }
+
+        // Connection dropped by the player or by an I/O error
+        void disconnect() {
+            boolean wasOpen = channel.isOpen();
+            closeChannel();
+            if (wasOpen && client != null) {
+                try {
+                    TriviaServer.removeClient(client);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void closeChannel() {
+            try {
+                key.cancel();
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.*;
+
+//bounded queue of encoded frames waiting to be written to one player.
+//broadcasts only ever append here, so a slow socket can't hold up the game thread;
+//the policy decides what happens once a player stops keeping up.
+public class OutboundQueue {
+
+    public enum Policy {
+        DROP_TICKS,     //when full, throw away timer ticks to make room
+        COALESCE_TICKS, //keep at most one pending timer tick, then behave like DROP_TICKS
+        DISCONNECT;     //when full, give up on the player
+
+        public static Policy fromFlag(String flag) {
+            switch (flag.toLowerCase()) {
+                case "drop": return DROP_TICKS;
+                case "coalesce": return COALESCE_TICKS;
+                case "disconnect": return DISCONNECT;
+                default: throw new IllegalArgumentException("Unknown slow consumer policy: " + flag);
+            }
+        }
+    }
+
+    private static final class Entry {
+        final byte[] frame;
+        final boolean tick;
+
+        Entry(byte[] frame, boolean tick) {
+            this.frame = frame;
+            this.tick = tick;
+        }
+    }
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final int capacity;
+    private final Policy policy;
+    private int droppedTicks = 0;
+
+    public OutboundQueue(int capacity, Policy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    //adds a frame; ticks are periodic updates that a newer tick makes stale.
+    //returns false when the player is too slow and should be disconnected.
+    public synchronized boolean offer(byte[] frame, boolean tick) {
+        if (tick && policy == Policy.COALESCE_TICKS && removeOldestTick()) {
+            droppedTicks++;
+            Metrics.TICKS_DROPPED.increment();
+        }
+
+        if (entries.size() >= capacity) {
+            if (policy == Policy.DISCONNECT) {
+                return false;
+            }
+            if (tick) {
+                droppedTicks++;
+                Metrics.TICKS_DROPPED.increment();
+                return true;
+            }
+            if (!removeOldestTick()) {
+                return false; //full of frames we can't drop
+            }
+            droppedTicks++;
+            Metrics.TICKS_DROPPED.increment();
+        }
+
+        entries.add(new Entry(frame, tick));
+        return true;
+    }
+
+    //next frame to write, or null when nothing is pending
+    public synchronized byte[] poll() {
+        Entry entry = entries.poll();
+        return entry == null ? null : entry.frame;
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    private boolean removeOldestTick() {
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            if (it.next().tick) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+}
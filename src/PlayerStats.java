@@ -0,0 +1,280 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lifetime stats of every player who has finished a match: games played, correct and
+// wrong answers, penalties, cumulative score and buzz latency. Players are known by the
+// key their client keeps and presents with "PLAYER <key>" on every connection, since
+// client ids are new each connection; players without a key get no stats. Records are
+// kept off the heap in a memory-mapped file of fixed-size slots, and an off-heap
+// open-addressing key -> slot table rebuilt when the file is opened finds them, so a
+// lookup is a hash probe or two and a few primitive reads, allocates nothing, and
+// millions of players cost no GC time. Matches add to it in one
+// batch when they end; the OS writes the pages back, and the file is forced to disk on
+// shutdown. Until open() is called every method is a no-op or returns 0.
+//
+// File: header (int magic "TQS1", int version, int slots used), padded to HEADER_SIZE,
+// then one record per slot: long player key, int games, int correct, int wrong,
+// int penalties, long total score, long buzzes, long total buzz latency in microseconds.
+public final class PlayerStats {
+    public static final int MAGIC = 0x54515331; // "TQS1"
+    public static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 48;
+    // Record fields
+    private static final int KEY = 0;
+    private static final int GAMES = 8;
+    private static final int CORRECT = 12;
+    private static final int WRONG = 16;
+    private static final int PENALTIES = 20;
+    private static final int TOTAL_SCORE = 24;
+    private static final int BUZZES = 32;
+    private static final int BUZZ_MICROS = 40;
+    // Mapped 65536 records (3 MB) at a time, as slots reach them
+    private static final int SEGMENT_BITS = 16;
+    private static final int SEGMENT_RECORDS = 1 << SEGMENT_BITS;
+
+    private static volatile PlayerStats stats; // null = not keeping stats
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private final SlotIndex slots;
+
+    private PlayerStats(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean fresh = channel.size() == 0;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (fresh) {
+            header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, 0);
+        } else if (header.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a player stats file");
+        } else if (header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Player stats version " + header.getInt(4) + ", expected " + VERSION);
+        }
+        // Map what the file already holds and index it by key
+        int used = header.getInt(8);
+        slots = new SlotIndex(used);
+        for (int slot = 0; slot < used; slot++) {
+            slots.put(segment(slot, true).getLong(offset(slot) + KEY), slot);
+        }
+    }
+
+    // Starts keeping stats in file, creating it if needed
+    public static void open(Path file) throws IOException {
+        PlayerStats opened = new PlayerStats(file);
+        stats = opened;
+        Runtime.getRuntime().addShutdownHook(new Thread(opened::close, "player-stats-close"));
+    }
+
+    public static boolean isOpen() {
+        return stats != null;
+    }
+
+    // Players with stats
+    public static int playerCount() {
+        PlayerStats s = stats;
+        return s == null ? 0 : s.slots.size;
+    }
+
+    // Adds one finished match for each player with a key, in a single batch
+    public static void recordMatch(List<ClientThread> players) {
+        PlayerStats s = stats;
+        if (s == null || players.isEmpty()) return;
+        long start = System.nanoTime();
+        try {
+            s.write(players);
+        } catch (UncheckedIOException e) {
+            Log.info("Player stats not saved: " + e.getCause().getMessage());
+            return;
+        }
+        Metrics.STATS_WRITE.recordSince(start);
+    }
+
+    private synchronized void write(List<ClientThread> players) {
+        int used = header.getInt(8);
+        for (ClientThread player : players) {
+            long key = player.getPlayerKey();
+            if (key == 0) continue;
+            int existing = slots.get(key);
+            int slot = existing >= 0 ? existing : used++;
+            ByteBuffer segment = segment(slot, true);
+            int at = offset(slot);
+            if (existing < 0) {
+                segment.putLong(at + KEY, key);
+                slots.put(key, slot);
+            }
+            segment.putInt(at + GAMES, segment.getInt(at + GAMES) + 1);
+            segment.putInt(at + CORRECT, segment.getInt(at + CORRECT) + player.getMatchCorrect());
+            segment.putInt(at + WRONG, segment.getInt(at + WRONG) + player.getMatchWrong());
+            segment.putInt(at + PENALTIES, segment.getInt(at + PENALTIES) + player.getMatchPenalties());
+            segment.putLong(at + TOTAL_SCORE, segment.getLong(at + TOTAL_SCORE) + player.getMatchScore());
+            segment.putLong(at + BUZZES, segment.getLong(at + BUZZES) + player.getMatchBuzzes());
+            segment.putLong(at + BUZZ_MICROS, segment.getLong(at + BUZZ_MICROS)
+                    + TimeUnit.NANOSECONDS.toMicros(player.getMatchBuzzNanos()));
+        }
+        header.putInt(8, used);
+    }
+
+    // Lookups by player key; 0 for players without stats
+
+    public static int gamesPlayed(long key) {
+        return readInt(key, GAMES);
+    }
+
+    public static int correctAnswers(long key) {
+        return readInt(key, CORRECT);
+    }
+
+    public static int wrongAnswers(long key) {
+        return readInt(key, WRONG);
+    }
+
+    public static int penalties(long key) {
+        return readInt(key, PENALTIES);
+    }
+
+    public static long totalScore(long key) {
+        return readLong(key, TOTAL_SCORE);
+    }
+
+    public static long averageBuzzMicros(long key) {
+        long buzzes = readLong(key, BUZZES);
+        return buzzes == 0 ? 0 : readLong(key, BUZZ_MICROS) / buzzes;
+    }
+
+    // STATS line for a player: STATS games=3 correct=5 wrong=2 penalties=1 score=10 avgBuzzMs=812
+    public static String describe(long key) {
+        return "STATS games=" + gamesPlayed(key) + " correct=" + correctAnswers(key) + " wrong=" + wrongAnswers(key)
+                + " penalties=" + penalties(key) + " score=" + totalScore(key)
+                + " avgBuzzMs=" + averageBuzzMicros(key) / 1000;
+    }
+
+    private static int readInt(long key, int field) {
+        PlayerStats s = stats;
+        int slot = s == null || key == 0 ? -1 : s.slots.get(key);
+        ByteBuffer segment = slot < 0 ? null : s.segment(slot, false);
+        return segment == null ? 0 : segment.getInt(offset(slot) + field);
+    }
+
+    private static long readLong(long key, int field) {
+        PlayerStats s = stats;
+        int slot = s == null || key == 0 ? -1 : s.slots.get(key);
+        ByteBuffer segment = slot < 0 ? null : s.segment(slot, false);
+        return segment == null ? 0 : segment.getLong(offset(slot) + field);
+    }
+
+    private static int offset(int slot) {
+        return (slot & (SEGMENT_RECORDS - 1)) * RECORD_SIZE;
+    }
+
+    // The mapped segment holding a slot's record, mapping it (and any before it) if create
+    // is set; null if it isn't mapped
+    private ByteBuffer segment(int slot, boolean create) {
+        int index = slot >>> SEGMENT_BITS;
+        MappedByteBuffer[] mapped = segments;
+        if (index < mapped.length) return mapped[index];
+        if (!create) return null;
+
+        synchronized (this) {
+            mapped = segments;
+            if (index < mapped.length) return mapped[index];
+            MappedByteBuffer[] grown = Arrays.copyOf(mapped, index + 1);
+            try {
+                for (int i = mapped.length; i <= index; i++) {
+                    // Mapping past the end of the file grows it
+                    grown[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                            HEADER_SIZE + (long) i * SEGMENT_RECORDS * RECORD_SIZE, (long) SEGMENT_RECORDS * RECORD_SIZE);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            segments = grown;
+            return grown[index];
+        }
+    }
+
+    // Player key -> slot, in a direct buffer of 16-byte entries (long key, int slot) with
+    // linear probing, kept at most half full. Key 0 marks an empty entry; it is never a
+    // player key. Only write() inserts, holding the PlayerStats lock; lookups take no lock.
+    // An entry's slot is stored before its key is released, so a reader that sees the key
+    // sees the slot, and a grown table is filled before it is published
+    private static final class SlotIndex {
+        private static final VarHandle KEYS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+        private static final int ENTRY = 16;
+        private static final int MIN_ENTRIES = 1024;
+
+        private volatile ByteBuffer table;
+        volatile int size;
+
+        SlotIndex(int expected) {
+            table = allocate(Math.max(MIN_ENTRIES, Integer.highestOneBit(Math.max(1, expected)) << 2));
+        }
+
+        // The key's slot, or -1 if it has none
+        int get(long key) {
+            ByteBuffer t = table;
+            int mask = t.capacity() / ENTRY - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long k = (long) KEYS.getAcquire(t, i * ENTRY);
+                if (k == key) return t.getInt(i * ENTRY + 8);
+                if (k == 0) return -1;
+            }
+        }
+
+        // Adds a key that isn't in the table yet; callers hold the PlayerStats lock
+        void put(long key, int slot) {
+            ByteBuffer t = table;
+            if ((size + 1) * 2 > t.capacity() / ENTRY) {
+                int entries = t.capacity() / ENTRY;
+                ByteBuffer grown = allocate(entries * 2);
+                for (int i = 0; i < entries; i++) {
+                    long k = t.getLong(i * ENTRY);
+                    if (k != 0) insert(grown, k, t.getInt(i * ENTRY + 8));
+                }
+                table = t = grown;
+            }
+            insert(t, key, slot);
+            size++;
+        }
+
+        private static void insert(ByteBuffer t, long key, int slot) {
+            int mask = t.capacity() / ENTRY - 1;
+            int i = hash(key) & mask;
+            while (t.getLong(i * ENTRY) != 0) {
+                i = (i + 1) & mask;
+            }
+            t.putInt(i * ENTRY + 8, slot);
+            KEYS.setRelease(t, i * ENTRY, key);
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        // Zeroed, so every entry starts empty; aligned for the key's release/acquire accesses
+        private static ByteBuffer allocate(int entries) {
+            return ByteBuffer.allocateDirect(entries * ENTRY + 8).alignedSlice(8).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    private void close() {
+        synchronized (this) {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            header.force();
+        }
+    }
+}
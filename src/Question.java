@@ -6,24 +6,80 @@ public class Question {
     private final String questionText;      // "What did the Florida Man do?"
     private final String[] options;         // A–D options
     private final char correctAnswer;       // 'A', 'B', 'C', or 'D'
+    private final String category;          // "general" unless tagged
+    private final int difficulty;           // 1 (easy) and up, 0 = not rated
+    private final long id;                  // stable hash of the text, see idOf
+    private volatile WireProtocol.Message wireForm; // text and options, encoded on first broadcast
+
+    public static final String DEFAULT_CATEGORY = "general";
+    public static final int OPTION_COUNT = 4; // clients and both wire encodings expect exactly A-D
 
     public Question(String line) {
-        // Split by pipe symbol: 3 parts → question, options, correct answer
+        // Split by pipe symbol: question, options, correct answer, then optional category and difficulty
         String[] parts = line.split("\\|");
-        if (parts.length != 3) {
+        if (parts.length < 3 || parts.length > 5) {
             throw new IllegalArgumentException("Invalid question format: " + line);
         }
 
         // Separate "Question X:" and actual question text
         String[] qParts = parts[0].split(":", 2);
+        if (qParts.length != 2) {
+            throw new IllegalArgumentException("Missing \"Question N:\" prefix: " + line);
+        }
         this.questionNumber = qParts[0].trim();         // e.g. "Question 1"
         this.questionText = qParts[1].trim();           // actual question text
 
-        // Get 4 options, assuming they are comma-separated
-        this.options = parts[1].split(",", 4);
+        // Exactly 4 comma-separated options; a short line would break every broadcast of it
+        this.options = parts[1].split(",", -1);
+        if (options.length != OPTION_COUNT) {
+            throw new IllegalArgumentException("Expected " + OPTION_COUNT + " options, got " + options.length + ": " + line);
+        }
 
         // Correct answer letter (A, B, C, D)
-        this.correctAnswer = parts[2].trim().toUpperCase().charAt(0);
+        String answer = parts[2].trim().toUpperCase();
+        if (answer.length() != 1 || answer.charAt(0) < 'A' || answer.charAt(0) >= 'A' + OPTION_COUNT) {
+            throw new IllegalArgumentException("Answer must be A-D: " + line);
+        }
+        this.correctAnswer = answer.charAt(0);
+
+        // e.g. "...|C|science|2"
+        this.category = parts.length > 3 ? normalizeCategory(parts[3]) : DEFAULT_CATEGORY;
+        this.difficulty = parts.length > 4 ? Integer.parseInt(parts[4].trim()) : 0;
+        if (difficulty < 0 || difficulty > 255) {
+            throw new IllegalArgumentException("Difficulty must be 0-255: " + line);
+        }
+        this.id = idOf(questionText);
+    }
+
+    // Builds a question from already separated fields (e.g. decoded from a compiled bank)
+    public Question(String questionNumber, String questionText, String[] options, char correctAnswer) {
+        this(questionNumber, questionText, options, correctAnswer, DEFAULT_CATEGORY, 0);
+    }
+
+    public Question(String questionNumber, String questionText, String[] options, char correctAnswer,
+                    String category, int difficulty) {
+        this.questionNumber = questionNumber;
+        this.questionText = questionText;
+        this.options = options;
+        this.correctAnswer = correctAnswer;
+        this.category = category;
+        this.difficulty = difficulty;
+        this.id = idOf(questionText);
+    }
+
+    // Identifies a question across banks and renumbering: 64-bit FNV-1a of its text
+    public static long idOf(String questionText) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < questionText.length(); i++) {
+            hash ^= questionText.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public static String normalizeCategory(String category) {
+        String trimmed = category.trim().toLowerCase();
+        return trimmed.isEmpty() ? DEFAULT_CATEGORY : trimmed;
     }
 
     public String getQuestionNumber() {
@@ -46,7 +102,32 @@ public class Question {
     public char getCorrectAnswer() {
         return correctAnswer;
     }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    public long getId() {
+        return id;
+    }
     
+    // The question's text and options on the wire, made the first time it is broadcast;
+    // each protocol's bytes are encoded once, on first use, and shared by every room that
+    // deals this Question, each adding its own number (see WireProtocol.question)
+    public WireProtocol.Message getWireForm() {
+        WireProtocol.Message form = wireForm;
+        if (form == null) {
+            // Racing threads encode identical bytes, so it doesn't matter whose copy sticks
+            form = WireProtocol.questionTail(this);
+            wireForm = form;
+        }
+        return form;
+    }
+
     public String getFormattedQuestion() {
         return questionText + "\nA. " + options[0] + "\nB. " + options[1] + "\nC. " + options[2] + "\nD. " + options[3];
     }
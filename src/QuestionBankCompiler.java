@@ -0,0 +1,171 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Offline tool that turns a Questions.txt style bank into the indexed binary file
+// MappedQuestionBank reads. The input is streamed line by line; lines that don't
+// parse are reported with their line number and skipped.
+//
+// Usage: java QuestionBankCompiler <questions.txt> <bank.tqb>
+public class QuestionBankCompiler {
+    private static final int MAX_STRING = 0xFFFF;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java QuestionBankCompiler <questions.txt> <bank.tqb>");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            int compiled = compile(in, Paths.get(args[1]));
+            System.out.printf("Compiled %d questions into %s in %.1f s%n", compiled, args[1],
+                    (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    // Writes every valid question read from in to out; returns how many were written.
+    // The bank is built next to out and moved over it in one step, so a server that has
+    // the old file mapped (and is watching it for changes) never sees a half-written one
+    public static int compile(BufferedReader in, Path out) throws IOException {
+        Path temp = out.resolveSibling(out.getFileName() + ".tmp");
+        int count;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            count = write(in, channel);
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    private static int write(BufferedReader in, FileChannel channel) throws IOException {
+        // Big enough for the largest possible record (six 64 KB fields)
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        long bufferStart = MappedQuestionBank.HEADER_SIZE; // file position of buffer's first byte
+        long[] offsets = new long[1024];
+        long[] ids = new long[1024];
+        byte[] tags = new byte[2 * 1024]; // category number, difficulty
+        Map<String, Integer> categories = new LinkedHashMap<>();
+        int count = 0;
+        int lineNumber = 0;
+        int skipped = 0;
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+
+            Question question;
+            byte[] record;
+            try {
+                question = new Question(line);
+                record = encode(question);
+                if (!categories.containsKey(question.getCategory()) && categories.size() == 256) {
+                    throw new IllegalArgumentException("More than 256 categories");
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Line " + lineNumber + " skipped: " + e.getMessage());
+                skipped++;
+                continue;
+            }
+
+            // Skip ahead to the next chunk rather than straddle two mappings
+            long offset = bufferStart + buffer.position();
+            long chunkEnd = (offset / MappedQuestionBank.CHUNK_SIZE + 1) * MappedQuestionBank.CHUNK_SIZE;
+            if (offset + record.length > chunkEnd) {
+                flush(channel, buffer, bufferStart);
+                bufferStart = chunkEnd;
+            }
+            if (record.length > buffer.remaining()) {
+                bufferStart = flush(channel, buffer, bufferStart);
+            }
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                ids = Arrays.copyOf(ids, count * 2);
+                tags = Arrays.copyOf(tags, count * 4);
+            }
+            offsets[count] = bufferStart + buffer.position();
+            ids[count] = question.getId();
+            tags[2 * count] = (byte) (int) categories.computeIfAbsent(question.getCategory(), c -> categories.size());
+            tags[2 * count + 1] = (byte) question.getDifficulty();
+            count++;
+            buffer.put(record);
+        }
+        long indexOffset = flush(channel, buffer, bufferStart);
+
+        // Index and category table after the records, then the header that points at them
+        ByteBuffer index = ByteBuffer.allocate(MappedQuestionBank.ENTRY_SIZE * 4096);
+        long indexPosition = indexOffset;
+        for (int i = 0; i < count; i++) {
+            if (!index.hasRemaining()) {
+                indexPosition = flush(channel, index, indexPosition);
+            }
+            index.putLong(offsets[i]).putLong(ids[i]).put(tags[2 * i]).put(tags[2 * i + 1]);
+        }
+        long categoriesOffset = flush(channel, index, indexPosition);
+
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        table.write(categories.size() >>> 8);
+        table.write(categories.size());
+        for (String category : categories.keySet()) {
+            writeString(table, category);
+        }
+        byte[] tableBytes = table.toByteArray();
+        flush(channel, ByteBuffer.allocate(tableBytes.length).put(tableBytes), categoriesOffset);
+
+        ByteBuffer header = ByteBuffer.allocate(MappedQuestionBank.HEADER_SIZE);
+        header.putInt(MappedQuestionBank.MAGIC).putInt(MappedQuestionBank.VERSION)
+              .putInt(count).putLong(indexOffset).putLong(categoriesOffset);
+        flush(channel, header, 0);
+
+        if (skipped > 0) {
+            System.out.println(skipped + " line(s) skipped.");
+        }
+        System.out.println("Categories: " + String.join(", ", categories.keySet()));
+        return count;
+    }
+
+    private static byte[] encode(Question q) {
+        String[] options = q.getOptions();
+        if (options.length != Question.OPTION_COUNT) {
+            throw new IllegalArgumentException("Expected " + Question.OPTION_COUNT + " options");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        writeString(out, q.getQuestionNumber());
+        writeString(out, q.getQuestionText());
+        out.write(options.length);
+        for (String option : options) {
+            writeString(out, option);
+        }
+        out.write(q.getCorrectAnswer());
+        return out.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING) {
+            throw new IllegalArgumentException("Field longer than " + MAX_STRING + " bytes");
+        }
+        out.write(bytes.length >>> 8);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    // Writes the buffered bytes at position and returns the position after them
+    private static long flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Loads a question bank from disk and reloads it in the background whenever the file
+// changes, so questions can be edited without restarting the server. A .tqb file is
+// a bank compiled by QuestionBankCompiler and is re-mapped; anything else is read as
+// Questions.txt-style text, where lines that didn't change keep their already parsed
+// Question and only new or edited lines are parsed again.
+//
+// Each reload builds a complete new bank and hands it to the listener, which swaps it
+// in with a single reference write; banks are never modified after they're built, so
+// matches holding the old one keep playing it undisturbed. Bad lines are reported with
+// their line number and skipped, and a bank that fails to load is reported and ignored,
+// leaving the current one in place.
+public class QuestionBankWatcher {
+    // Editors save in several steps; wait for the file to go quiet before reloading
+    private static final long SETTLE_MILLIS = 250;
+
+    private final Path file;
+    private Map<String, Question> parsedLines = Map.of(); // text banks only, line -> question
+
+    public QuestionBankWatcher(Path file) {
+        this.file = file.toAbsolutePath();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // Reads the bank as it is now
+    public List<Question> load() throws IOException {
+        if (file.getFileName().toString().endsWith(".tqb")) {
+            return MappedQuestionBank.open(file);
+        }
+        return parseText();
+    }
+
+    private List<Question> parseText() throws IOException {
+        Map<String, Question> previous = parsedLines;
+        Map<String, Question> current = new HashMap<>();
+        List<Question> bank = new ArrayList<>();
+        int lineNumber = 0;
+        int parsed = 0;
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+
+                Question q = previous.get(line);
+                if (q == null) {
+                    try {
+                        q = new Question(line);
+                        parsed++;
+                    } catch (RuntimeException e) {
+                        System.out.println(file.getFileName() + " line " + lineNumber + " skipped: " + e.getMessage());
+                        continue;
+                    }
+                }
+                current.put(line, q);
+                bank.add(q);
+            }
+        }
+
+        if (bank.isEmpty()) {
+            throw new IOException("no valid questions");
+        }
+        parsedLines = current;
+        if (!previous.isEmpty()) {
+            System.out.println(file.getFileName() + ": " + parsed + " new or changed question(s) parsed, "
+                    + (bank.size() - parsed) + " unchanged.");
+        }
+        return Collections.unmodifiableList(bank);
+    }
+
+    // Watches the file's directory and calls onReload with each new bank, on a daemon thread
+    public void start(Consumer<List<Question>> onReload) throws IOException {
+        WatchService watcher = file.getFileSystem().newWatchService();
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(() -> watch(watcher, onReload), "question-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Watching " + file + " for changes.");
+    }
+
+    private void watch(WatchService watcher, Consumer<List<Question>> onReload) {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = pollChanged(key);
+
+                // Collect the rest of this save before reading the file
+                while (changed && (key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    pollChanged(key);
+                }
+                if (!changed) continue;
+
+                try {
+                    onReload.accept(load());
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Question bank " + file.getFileName() + " not reloaded: " + e.getMessage()
+                            + ". Still using the previous questions.");
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // server shutting down
+        }
+    }
+
+    // True if any event in the key is about our file; re-arms the key
+    private boolean pollChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || (context instanceof Path name && name.equals(file.getFileName()))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
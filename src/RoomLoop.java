@@ -0,0 +1,95 @@
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// A room's mailbox. Everything that changes a game (answers, buzzes, timer expiries,
+// joins and leaves) is posted here from whatever thread it arrived on and run one event
+// at a time, in the order posted, so a room's state is only ever touched by one thread
+// at a time and needs no locks. Rooms don't own threads: a room with events waiting
+// borrows one of a few shared threads, runs a batch, and hands it back, so idle rooms
+// cost nothing and a busy room can't starve the others.
+public final class RoomLoop {
+    private static final int BATCH = 64; // events run before other rooms get a turn
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+    private static final ExecutorService threads = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "room-loop-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final long QUERY_TIMEOUT_MILLIS = 1000;
+
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile Thread running;
+
+    // Queues an event; callable from any thread, including the loop itself
+    public void post(Runnable event) {
+        mailbox.add(event);
+        if (scheduled.compareAndSet(false, true)) {
+            threads.execute(this::drain);
+        }
+    }
+
+    public boolean inLoop() {
+        return running == Thread.currentThread();
+    }
+
+    // Runs question on the loop; the answer completes once it has run
+    public <T> CompletableFuture<T> ask(Supplier<T> question) {
+        CompletableFuture<T> answer = new CompletableFuture<>();
+        if (inLoop()) {
+            answer.complete(question.get());
+            return answer;
+        }
+        post(() -> {
+            try {
+                answer.complete(question.get());
+            } catch (RuntimeException e) {
+                answer.completeExceptionally(e);
+            }
+        });
+        return answer;
+    }
+
+    // Runs question on the loop and waits for its answer; null if the loop is too busy to answer
+    public <T> T query(Supplier<T> question) {
+        if (inLoop()) return question.get();
+        CompletableFuture<T> answer = ask(question);
+        try {
+            return answer.get(QUERY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private void drain() {
+        running = Thread.currentThread();
+        try {
+            for (int i = 0; i < BATCH; i++) {
+                Runnable event = mailbox.poll();
+                if (event == null) break;
+                // Exceptions are reported but never escape, so one bad event can't stall the room
+                try {
+                    event.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            running = null;
+            scheduled.set(false);
+            // More arrived (or the batch ran out): take another turn
+            if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+                threads.execute(this::drain);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.Arrays;
+
+// Questions a player has already been shown, as a Bloom filter over Question ids.
+// Sized for the bank it filters, up to MAX_CAPACITY questions (about 10 KB):
+// mightContain can be wrong the safe way (a question is skipped that wasn't actually
+// seen, about 1% of the time at capacity), never the other way. Once capacity
+// questions have been added the filter starts over, so a long-time player's oldest
+// questions come back around. Filters are checked one player at a time, never OR-ed
+// together, since a union of full filters would match nearly everything.
+public class SeenQuestions {
+    private static final int MIN_CAPACITY = 64;
+    private static final int MAX_CAPACITY = 8192;
+    // 1% false positive rate at capacity: m = -n ln p / (ln 2)^2 = 9.59 bits per question, k = m/n ln 2
+    private static final double BITS_PER_QUESTION = 9.59;
+    private static final int HASHES = 7;
+
+    private final int capacity;
+    private final int bitCount;
+    private final long[] bits;
+    private int added;
+
+    // A filter for a bank of bankSize questions
+    public SeenQuestions(int bankSize) {
+        capacity = Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, bankSize));
+        bitCount = (int) Math.ceil(capacity * BITS_PER_QUESTION);
+        bits = new long[(bitCount + 63) / 64];
+    }
+
+    public synchronized void add(long id) {
+        if (mightContainLocked(id)) return;
+        if (added == capacity) {
+            Arrays.fill(bits, 0);
+            added = 0;
+        }
+        long h1 = id;
+        long h2 = mix(id);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = bitFor(h1, h2, i);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        added++;
+    }
+
+    public synchronized boolean mightContain(long id) {
+        return mightContainLocked(id);
+    }
+
+    private boolean mightContainLocked(long id) {
+        long h1 = id;
+        long h2 = mix(id);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = bitFor(h1, h2, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    // Double hashing: the i-th probe is h1 + i * h2
+    private int bitFor(long h1, long h2, int i) {
+        return (int) Long.remainderUnsigned(h1 + i * h2, bitCount);
+    }
+
+    // SplitMix64 finalizer, so the second hash is independent of the first
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return (z ^ (z >>> 31)) | 1;
+    }
+}
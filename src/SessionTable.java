@@ -0,0 +1,56 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Sessions waiting for their player to come back, keyed by session token. A client
+// that reconnects and sends "RESUME <token>" claims its session and carries on with
+// the same id, score, room and seen questions. Each session holds only a few fields,
+// no socket or thread, and is forgotten once it expires.
+public class SessionTable {
+    public static final class Session {
+        final long token;
+        final int clientId;
+        volatile int score;          // read on the room's loop, which owns it, after the session is parked
+        volatile ClientThread.MatchStats match; // read along with the score; null if not known
+        final GameRoom room;         // room to rejoin, null if none
+        final SeenQuestions seen;    // null if restored from a snapshot or the player was shown nothing
+        final long expiresAtNanos;
+
+        public Session(long token, int clientId, int score, ClientThread.MatchStats match, GameRoom room,
+                       SeenQuestions seen, long expiresAtNanos) {
+            this.token = token;
+            this.clientId = clientId;
+            this.score = score;
+            this.match = match;
+            this.room = room;
+            this.seen = seen;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+
+    public void park(Session session) {
+        sessions.put(session.token, session);
+    }
+
+    // Takes the session for this token, or null if there is none or it expired
+    public Session claim(long token) {
+        Session session = sessions.remove(token);
+        if (session == null || session.expiresAtNanos - System.nanoTime() < 0) return null;
+        return session;
+    }
+
+    public boolean contains(long token) {
+        return sessions.containsKey(token);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    // Drops expired sessions
+    public void expire() {
+        long now = System.nanoTime();
+        sessions.values().removeIf(session -> session.expiresAtNanos - now < 0);
+    }
+}
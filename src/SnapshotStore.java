@@ -0,0 +1,121 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+// Keeps the latest snapshot in a small memory-mapped file with two slots. Each write
+// goes to the slot not holding the current snapshot and is msync'd, so whatever moment
+// the process (or machine) dies at, at least one slot holds a complete snapshot; a slot
+// whose checksum doesn't match is ignored and the other one is used.
+//
+// Slot layout (big-endian): long sequence, int length, int CRC32 of the payload, payload.
+// The newest valid sequence wins. A payload that outgrows its slot moves the store to a
+// bigger file, written beside the old one and renamed over it.
+public class SnapshotStore implements Closeable {
+    private static final int SLOT_HEADER = 16;
+    private static final int MIN_SLOT = 64 * 1024;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int slotSize;
+    private int latestSlot = -1; // -1 = no valid snapshot yet
+    private long sequence;
+
+    private SnapshotStore(Path file) {
+        this.file = file;
+    }
+
+    public static SnapshotStore open(Path file) throws IOException {
+        SnapshotStore store = new SnapshotStore(file);
+        if (!Files.exists(file) || Files.size(file) < 2L * (SLOT_HEADER + 1)) {
+            store.create(MIN_SLOT, null);
+        }
+        store.map();
+        return store;
+    }
+
+    // The newest complete snapshot, or null if there is none
+    public synchronized byte[] read() {
+        if (latestSlot < 0) return null;
+        ByteBuffer slot = slot(latestSlot);
+        byte[] payload = new byte[slot.getInt(8)];
+        slot.get(SLOT_HEADER, payload);
+        return payload;
+    }
+
+    public synchronized void write(byte[] payload) throws IOException {
+        if (payload.length > slotSize - SLOT_HEADER) {
+            close();
+            create(Math.max(2 * slotSize, payload.length + SLOT_HEADER), payload);
+            map();
+            return;
+        }
+
+        int target = latestSlot == 0 ? 1 : 0;
+        ByteBuffer slot = slot(target);
+        slot.putInt(12, checksum(payload)).put(SLOT_HEADER, payload)
+            .putLong(0, sequence + 1).putInt(8, payload.length);
+        map.force();
+        sequence++;
+        latestSlot = target;
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        slotSize = (int) Math.min(Integer.MAX_VALUE, size / 2);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * slotSize);
+
+        latestSlot = -1;
+        sequence = 0;
+        for (int i = 0; i < 2; i++) {
+            ByteBuffer slot = slot(i);
+            long slotSequence = slot.getLong(0);
+            int length = slot.getInt(8);
+            if (slotSequence <= sequence || length < 0 || length > slotSize - SLOT_HEADER) continue;
+            byte[] payload = new byte[length];
+            slot.get(SLOT_HEADER, payload);
+            if (checksum(payload) == slot.getInt(12)) {
+                latestSlot = i;
+                sequence = slotSequence;
+            }
+        }
+    }
+
+    // A fresh file with the given slot size, holding payload (if any) in slot 0
+    private void create(int newSlotSize, byte[] payload) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer contents = ByteBuffer.allocate(2 * newSlotSize);
+        if (payload != null) {
+            contents.putLong(0, sequence + 1).putInt(8, payload.length)
+                    .putInt(12, checksum(payload)).put(SLOT_HEADER, payload);
+        }
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (contents.hasRemaining()) {
+                out.write(contents);
+            }
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ByteBuffer slot(int i) {
+        return map.slice(i * slotSize, slotSize);
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+//blocking connection used by the thread-per-client engine.
+//outgoing frames go through a bounded queue drained by a writer task on the client pool,
+//so broadcasting never blocks on this player's socket.
+public class SocketConnection implements ClientConnection {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final OutputStream out;
+    private final OutboundQueue outbound;
+    private final Executor writer;
+
+    //guarded by outbound
+    private boolean draining = false;
+    private boolean closeRequested = false;
+
+    public SocketConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.outbound = TriviaServer.newOutboundQueue();
+        this.writer = TriviaServer.getWriterPool();
+    }
+
+    //blocks until the player sends a full line, null once the socket is closed
+    public String readLine() throws IOException {
+        return in.readLine();
+    }
+
+    @Override
+    public void send(String message) {
+        sendFrame((message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void sendFrame(byte[] frame) {
+        enqueue(frame, false);
+    }
+
+    @Override
+    public void sendTick(byte[] frame) {
+        enqueue(frame, true);
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return socket.getInetAddress();
+    }
+
+    //closes once everything already queued (e.g. "killswitch") has been written
+    @Override
+    public void close() {
+        synchronized (outbound) {
+            closeRequested = true;
+            if (draining) return; //the writer closes when it's done
+        }
+        closeNow();
+    }
+
+    private void enqueue(byte[] frame, boolean tick) {
+        boolean startDrain = false;
+        boolean overflow = false;
+        synchronized (outbound) {
+            if (closeRequested) return;
+            if (!outbound.offer(frame, tick)) {
+                outbound.clear();
+                closeRequested = true;
+                overflow = true;
+            } else if (!draining) {
+                draining = true;
+                startDrain = true;
+            }
+        }
+
+        if (overflow) {
+            //closing the socket also unblocks a writer stuck on it; the reader thread then removes the client
+            if (Log.event()) Log.info("Slow consumer " + socket.getInetAddress() + ": send queue full, disconnecting.");
+            closeNow();
+        } else if (startDrain) {
+            try {
+                writer.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                closeNow(); //server is shutting down
+            }
+        }
+    }
+
+    //writes everything queued, flushing once the queue runs dry
+    private void drain() {
+        try {
+            while (true) {
+                byte[] frame = outbound.poll();
+                if (frame != null) {
+                    out.write(frame);
+                    continue;
+                }
+
+                out.flush();
+                synchronized (outbound) {
+                    if (!outbound.isEmpty()) continue;
+                    draining = false;
+                    if (!closeRequested) return;
+                }
+                break;
+            }
+        } catch (IOException e) {
+            //a broken socket shows up as a disconnect on the reading side
+            synchronized (outbound) {
+                outbound.clear();
+                draining = false;
+            }
+        }
+        closeNow();
+    }
+
+    private void closeNow() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //already closed
+        }
+    }
+}
@@ -1,105 +1,230 @@
 import java.io.*;
 import java.net.*;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class TriviaServer {
     private static final int TCP_PORT = 1234;
     private static final int UDP_PORT = 1235;
+    private static final long SNAPSHOT_WAIT_MILLIS = 1000; // for all rooms together
+
+    // List of trivia questions, shared read-only by every room's deck. Either parsed from
+    // the bundled Questions.txt or loaded from --bank; a reload swaps in a whole new list
+    private static volatile List<Question> questions = new ArrayList<>();
+    private static int matchLength = 20; // questions per match
+    // How rooms deal their decks: random per match (optionally filtered), or the bank in order
+    private static boolean randomDecks = true;
+    private static String deckCategory;   // null = any
+    private static int deckDifficulty;    // 0 = any
+    private static Long deckSeed;         // null = fresh seed per match
+    // Every connected client, whichever room it is in
+    private static final ClientRegistry clients = new ClientRegistry();
+    private static final SecureRandom tokenSource = new SecureRandom();
+    // Sessions a reconnecting player can take back with "RESUME <token>"
+    private static final SessionTable sessions = new SessionTable();
+    // Questions each recently seen player key has been shown, so they outlive its connections
+    private static final int SEEN_PLAYERS = 10_000;
+    private static final Map<Long, SeenQuestions> seenByPlayer = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SeenQuestions> eldest) {
+            return size() > SEEN_PLAYERS;
+        }
+    };
+    // How long a dropped player's session is kept for it to resume (0 = not kept)
+    private static int resumeGraceSeconds = 60;
+    // Running matches by name, and the room new players are assigned to
+    private static final Map<String, GameRoom> rooms = new ConcurrentHashMap<>();
+    private static GameRoom openRoom;
+    private static int nextRoomNumber = 1;
+    private static int roomSize = 0; // 0 = unlimited
+    // Thread pool to manage clients (one virtual thread per client with --threads=virtual)
+    private static ExecutorService pool = Executors.newCachedThreadPool();
+    // Builds the accept loop and admin console threads
+    private static Thread.Builder threadBuilder = Thread.ofPlatform();
+
+    // Per-client send queue size and what to do when a client can't keep up
+    private static int sendQueueCapacity = 256;
+    private static OutboundQueue.Policy slowConsumerPolicy = OutboundQueue.Policy.COALESCE_TICKS;
 
-    // List of trivia questions
-    private static final List<Question> questions = new ArrayList<>();
-    // Connected client threads
-    private static final List<ClientThread> clients = new ArrayList<>();
-    // Queue for buzzed-in clients
-    public static final Queue<ClientThread> buzzQueue = new LinkedList<>();
-    // Thread pool to manage clients
-    private static final ExecutorService pool = Executors.newCachedThreadPool();
-
-    private static int currentQuestionIndex = 0;
-    private static boolean receivingBuzzes = true;
-    private static boolean hasPrintedWinners = false;
     private static ServerSocket serverSocket;
-    private static int nextClientID = 0;
+    private static NioServerEngine nioEngine;
+    private static UdpBuzzReceiver udpReceiver;
+    private static final AtomicInteger nextClientID = new AtomicInteger();
+
+    // Game clock shared by every room
+    private static final GameScheduler scheduler = new GameScheduler();
+
+    // Usage: java -jar TriviaServer.jar [--engine=blocking|nio] [--loops=N] [--threads=platform|virtual]
+    //                                   [--send-queue=N] [--slow-consumer=drop|coalesce|disconnect]
+    //                                   [--room-size=N] [--udp-threads=N] [--bank=file.txt|file.tqb]
+    //                                   [--match-length=N] [--deck=random|ordered] [--category=name]
+    //                                   [--difficulty=N] [--deck-seed=N] [--metrics-port=N]
+    //                                   [--log-events=N] [--journal=events.tqj]
+    //                                   [--snapshot=matches.snap] [--snapshot-interval=ms]
+    //                                   [--resume-grace=seconds] [--exit-when-idle=seconds]
+    //                                   [--stats=players.stats]
+    public static void main(String[] args) {
+        String bank = getFlag(args, "bank", null);
+        if (bank != null) {
+            loadBank(bank);
+        } else {
+            loadQuestions();
+        }
+        matchLength = Integer.parseInt(getFlag(args, "match-length", String.valueOf(matchLength)));
+        randomDecks = !getFlag(args, "deck", "random").equalsIgnoreCase("ordered");
+        String category = getFlag(args, "category", null);
+        deckCategory = category == null ? null : Question.normalizeCategory(category);
+        deckDifficulty = Integer.parseInt(getFlag(args, "difficulty", "0"));
+        String seed = getFlag(args, "deck-seed", null);
+        deckSeed = seed == null ? null : Long.parseLong(seed);
+
+        roomSize = Integer.parseInt(getFlag(args, "room-size", "0"));
+
+        sendQueueCapacity = Integer.parseInt(getFlag(args, "send-queue", String.valueOf(sendQueueCapacity)));
+        slowConsumerPolicy = OutboundQueue.Policy.fromFlag(getFlag(args, "slow-consumer", "coalesce"));
+
+        // Per-event log lines per second; the rest are only counted
+        Log.setEventsPerSecond(Integer.parseInt(getFlag(args, "log-events", "20")));
+        int metricsPort = Integer.parseInt(getFlag(args, "metrics-port", "9100"));
+        String journal = getFlag(args, "journal", null);
+        if (journal != null) {
+            try {
+                GameJournal.open(Paths.get(journal));
+                System.out.println("Journaling game events to " + journal);
+            } catch (IOException e) {
+                System.out.println("Failed to open journal " + journal + ": " + e.getMessage() + ". Not journaling.");
+            }
+        }
 
-    private static Timer activeTimer = new Timer();
+        // Lifetime player stats, by the player key each client presents
+        String stats = getFlag(args, "stats", null);
+        if (stats != null) {
+            try {
+                PlayerStats.open(Paths.get(stats));
+                System.out.println("Keeping player stats in " + stats + " (" + PlayerStats.playerCount() + " players)");
+            } catch (IOException e) {
+                System.out.println("Failed to open player stats " + stats + ": " + e.getMessage() + ". Not keeping stats.");
+            }
+        }
 
-    public static void main(String[] args) {
-        loadQuestions();
+        resumeGraceSeconds = Integer.parseInt(getFlag(args, "resume-grace", String.valueOf(resumeGraceSeconds)));
+        // The server runs until stopped unless told to exit after sitting idle this long
+        startHousekeeping(Integer.parseInt(getFlag(args, "exit-when-idle", "0")));
+
+        // Running matches are snapshotted here and picked up again after a restart
+        String snapshot = getFlag(args, "snapshot", null);
+        if (snapshot != null) {
+            long interval = Long.parseLong(getFlag(args, "snapshot-interval", "1000"));
+            try {
+                SnapshotStore store = SnapshotStore.open(Paths.get(snapshot));
+                restoreSnapshot(store);
+                startSnapshots(store, interval);
+            } catch (IOException e) {
+                System.out.println("Failed to open snapshot file " + snapshot + ": " + e.getMessage()
+                        + ". Matches won't survive a restart.");
+            }
+        }
+
+        int udpThreads = Integer.parseInt(getFlag(args, "udp-threads",
+                String.valueOf(Math.min(4, Runtime.getRuntime().availableProcessors()))));
+        // Rank buzzes by estimated send time instead of arrival, moving none by more than this
+        int buzzCompensation = Integer.parseInt(getFlag(args, "buzz-compensation", "0"));
+
+        String engine = getFlag(args, "engine", "blocking");
+        int loops = Integer.parseInt(getFlag(args, "loops",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        if (getFlag(args, "threads", "platform").equalsIgnoreCase("virtual")) {
+            pool = Executors.newVirtualThreadPerTaskExecutor();
+            threadBuilder = Thread.ofVirtual();
+            System.out.println("Client sessions run on virtual threads.");
+        }
 
         try {
-            serverSocket = new ServerSocket(TCP_PORT);
-            System.out.println("Trivia Server started on port " + TCP_PORT);
+            if (engine.equalsIgnoreCase("nio")) {
+                nioEngine = new NioServerEngine(TCP_PORT, loops);
+                nioEngine.start();
+                System.out.println("Trivia Server started on port " + TCP_PORT + " (NIO engine, " + loops + " event loops)");
+            } else {
+                serverSocket = new ServerSocket(TCP_PORT);
+                System.out.println("Trivia Server started on port " + TCP_PORT);
+            }
 
-            // Start thread to listen for UDP buzzes
-            new UDPBuzzThread().start();
+            // Start threads to listen for UDP buzzes
+            udpReceiver = new UdpBuzzReceiver(UDP_PORT, udpThreads, buzzCompensation);
+            udpReceiver.start();
+
+            if (metricsPort > 0) {
+                startMetrics(metricsPort);
+            }
 
             // Admin command listener thread (e.g., for kicking clients)
-            new Thread(() -> {
+            threadBuilder.name("admin-console").start(() -> {
                 Scanner scanner = new Scanner(System.in);
-                while (true) {
+                while (scanner.hasNextLine()) {
                     String command = scanner.nextLine();
-                    if (command.startsWith("kill ")) {
+                    if (command.equals("udp")) {
+                        System.out.println(udpReceiver.describe());
+                    } else if (command.equals("rooms")) {
+                        for (GameRoom room : rooms.values()) {
+                            System.out.println(room.getName() + ": " + room.getPlayerCount() + " players, "
+                                    + (room.isStarted() ? "question " + room.getCurrentQuestionIndex() : "in lobby"));
+                        }
+                    } else if (command.startsWith("stats ")) {
                         try {
                             int id = Integer.parseInt(command.split(" ")[1]);
-                            for (ClientThread client : new ArrayList<>(clients)) {
-                                if (client.getClientID() == id) {
-                                    client.sendMessage("killswitch");
-                                    removeClient(client);
-                                    System.out.println("Client-" + id + " was kicked by admin.");
-                                    break;
-                                }
+                            ClientThread client = clients.findById(id);
+                            if (client == null) {
+                                System.out.println("No Client-" + id + " connected.");
+                            } else if (client.getPlayerKey() == 0) {
+                                System.out.println("Client-" + id + " has no player key, so no stats.");
+                            } else {
+                                System.out.println("Client-" + id + ": " + PlayerStats.describe(client.getPlayerKey()));
+                            }
+                        } catch (NumberFormatException e) {
+                            System.out.println("Usage: stats <client id>");
+                        }
+                    } else if (command.startsWith("kill ")) {
+                        try {
+                            int id = Integer.parseInt(command.split(" ")[1]);
+                            ClientThread client = clients.findById(id);
+                            if (client != null) {
+                                client.sendMessage("killswitch");
+                                removeClient(client, false);
+                                System.out.println("Client-" + id + " was kicked by admin.");
                             }
                         } catch (Exception e) {
                             System.out.println("Invalid kick command.");
                         }
                     }
                 }
-            }).start();
+            });
 
-            // Accept incoming client connections
-            new Thread(() -> {
-                while (true) {
-                    try {
-                        Socket socket = serverSocket.accept();
-                        ClientThread client = new ClientThread(socket, nextClientID++);
+            // Accept incoming client connections (the NIO engine accepts on its own event loop)
+            if (serverSocket != null) {
+                threadBuilder.name("tcp-accept").start(() -> {
+                    while (true) {
+                        try {
+                            Socket socket = serverSocket.accept();
+                            ClientThread client;
+                            try {
+                                client = new ClientThread(socket, nextClientID());
+                            } catch (IOException e) {
+                                socket.close();
+                                continue;
+                            }
 
-                        synchronized (clients) {
-                            clients.add(client);
-                        }
-                        if (currentQuestionIndex > 0) {
-                            client.setJoinedMidGame(true);
-                            client.sendMessage("WaitForNextRound");
+                            registerClient(client);
+                            pool.execute(client);
+                        } catch (IOException e) {
+                            break;
                         }
-
-                        pool.execute(client);
-                        System.out.println("Client-" + client.getClientID() + " connected.");
-                    } catch (IOException e) {
-                        break;
-                    }
-                }
-            }).start();
-
-            // Wait 15 seconds for players to join before starting the game
-            System.out.println("Waiting 15 seconds for clients to join..");
-            Thread.sleep(15000);
-
-            synchronized (clients) {
-                if (clients.size() < 2) { 
-                    System.out.println("Not enough clients joined. Server shutting down.");
-                    for (ClientThread client: new ArrayList<>(clients)) {
-                        client.sendMessage("not_enough_players");
                     }
-                    if (serverSocket != null && !serverSocket.isClosed()) {
-                        serverSocket.close();
-                    }
-                    pool.shutdownNow();
-                    System.exit(0);
-                } else {
-                    System.out.println("Starting Trivia Game!");
-                    sendNextQuestionToAll();
-                }
+                });
             }
 
         } catch (Exception e) {
@@ -107,250 +232,431 @@ public class TriviaServer {
         }
     }
 
-    // Sends the next trivia question to all clients
-    public static void sendNextQuestionToAll() throws IOException {
-        if (currentQuestionIndex >= questions.size()) {
-            endGame();
-            return;
-        }
-
-        receivingBuzzes = true;
-        buzzQueue.clear();
+    // Registers the server-wide gauges and serves every metric at /metrics
+    private static void startMetrics(int port) {
+        Metrics.gauge("trivia_connected_clients", "Players currently connected", () -> clients.all().size());
+        Metrics.gauge("trivia_rooms", "Rooms in the lobby or playing", rooms::size);
+        Metrics.gauge("trivia_questions", "Questions in the current bank", () -> questions.size());
+        Metrics.gauge("trivia_resumable_sessions", "Sessions waiting for their player to reconnect", sessions::size);
+        Metrics.counter("trivia_udp_packets_received_total", "UDP packets received", udpReceiver::getReceived);
+        Metrics.counter("trivia_udp_buzzes_accepted_total", "UDP buzzes that counted", udpReceiver::getAccepted);
+        Metrics.counter("trivia_udp_buzzes_dropped_total",
+                "UDP buzzes that came too late, twice, or from a player who joined mid-question",
+                udpReceiver::getDropped);
+        Metrics.counter("trivia_udp_buzzes_unmatched_total", "UDP buzzes that matched no player in a room",
+                udpReceiver::getUnmatched);
+        Metrics.counter("trivia_udp_packets_malformed_total", "UDP packets that weren't a buzz or ping",
+                udpReceiver::getMalformed);
+        Metrics.counter("trivia_udp_pings_total", "UDP round-trip pings answered", udpReceiver::getPings);
 
-        Question q = questions.get(currentQuestionIndex);
-        System.out.println("\n " + q.getQuestionNumber() + ": " + q.getQuestionText());
-
-        for (ClientThread client : clients) {
-            client.setCanAnswer(false);
-            client.setCorrectAnswer(String.valueOf(q.getCorrectAnswer()));
-
-            client.sendMessage(q.getQuestionNumber() + ":");
-            client.sendMessage(q.getQuestionText());
-            client.sendMessage("A. " + q.getOptions()[0]);
-            client.sendMessage("B. " + q.getOptions()[1]);
-            client.sendMessage("C. " + q.getOptions()[2]);
-            client.sendMessage("D. " + q.getOptions()[3]);
-            client.sendMessage("Your Answer:");
+        try {
+            Metrics.serve(port);
+            System.out.println("Metrics at http://127.0.0.1:" + port + "/metrics");
+        } catch (IOException e) {
+            System.out.println("Metrics endpoint not started on port " + port + ": " + e.getMessage());
         }
+    }
 
-        currentQuestionIndex++;
-
-        // Start 15-second timer for players to buzz in
-        startTimer(15, () -> {
-            receivingBuzzes = false;
-
-            if (!buzzQueue.isEmpty()) {
-                ClientThread winner;
-                synchronized (buzzQueue) {
-                    winner = buzzQueue.poll();
-                }
+    // Recreates the matches in the latest snapshot and parks their players' sessions until they resume
+    private static void restoreSnapshot(SnapshotStore store) {
+        byte[] snapshot = store.read();
+        if (snapshot == null) return;
 
-                winner.setCanAnswer(true);
-                winner.sendMessage("ACK");
-                System.out.println("Client-" + winner.getClientID() + " buzzed first and may answer.");
+        List<MatchState> matches;
+        long[] taken = new long[1];
+        try {
+            matches = MatchState.decode(snapshot, taken);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Snapshot unreadable, starting without it: " + e.getMessage());
+            return;
+        }
 
-                for (ClientThread client : clients) {
-                    if (client != winner) {
-                        client.sendMessage("NAK");
+        long expires = System.nanoTime() + TimeUnit.SECONDS.toNanos(GameRoom.RESUME_TIMEOUT_SECONDS);
+        int players = 0;
+        int highestId = -1;
+        synchronized (rooms) {
+            for (MatchState match : matches) {
+                GameRoom room = GameRoom.restore(match, roomSize, scheduler);
+                rooms.put(match.room, room);
+                // Keep new room names and client ids clear of the restored ones
+                if (match.room.startsWith("room-")) {
+                    try {
+                        nextRoomNumber = Math.max(nextRoomNumber, Integer.parseInt(match.room.substring(5)) + 1);
+                    } catch (NumberFormatException e) {
+                        // a player-named room
                     }
                 }
+                for (MatchState.Player player : match.players) {
+                    sessions.park(new SessionTable.Session(player.token, player.clientId, player.score, player.match,
+                            room, null, expires));
+                    highestId = Math.max(highestId, player.clientId);
+                    players++;
+                }
+            }
+        }
+        nextClientID.accumulateAndGet(highestId + 1, Math::max);
+        System.out.println("Restored " + matches.size() + " match(es) with " + players + " player(s) from a snapshot "
+                + (System.currentTimeMillis() - taken[0]) + " ms old.");
+    }
 
-                // Start 10-second timer for answering
-                startTimer(10, () -> {
+    // Snapshots every running match each interval, off the game threads
+    private static void startSnapshots(SnapshotStore store, long intervalMillis) {
+        ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        boolean[] wroteEmpty = {false};
+        snapshots.scheduleAtFixedRate(() -> {
+            try {
+                // Ask every room at once, then collect, so a busy room costs one wait, not one each
+                Map<GameRoom, CompletableFuture<MatchState>> asked = new LinkedHashMap<>();
+                for (GameRoom room : rooms.values()) {
+                    asked.put(room, room.captureState());
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_WAIT_MILLIS);
+                List<MatchState> matches = new ArrayList<>();
+                for (Map.Entry<GameRoom, CompletableFuture<MatchState>> answer : asked.entrySet()) {
+                    MatchState state;
                     try {
-                        clientOutOfTime(winner);
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                        state = answer.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException e) {
+                        // Too busy to answer: its last capture stands in. Without one, keep the
+                        // previous snapshot rather than write one that is missing this match
+                        GameRoom room = answer.getKey();
+                        if (room.isFinished()) continue;
+                        state = room.lastState();
+                        if (state == null) return;
                     }
-                });
-
-            } else {
-                System.out.println("No one buzzed in. Skipping to next question.");
-                for (ClientThread client : clients) {
-                    client.sendMessage("Time expired");
+                    if (state != null) matches.add(state);
                 }
+                // Idle server: one empty snapshot is enough
+                if (matches.isEmpty() && wroteEmpty[0]) return;
+                store.write(MatchState.encode(matches, System.currentTimeMillis()));
+                wroteEmpty[0] = matches.isEmpty();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | ExecutionException | RuntimeException e) {
+                Log.info("Snapshot failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Once a second: forgets expired sessions, and with exitWhenIdleSeconds > 0 stops the
+    // server once it has had no players, rooms or resumable sessions for that long
+    private static void startHousekeeping(int exitWhenIdleSeconds) {
+        ScheduledExecutorService housekeeping = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "housekeeping");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] idleSince = {Long.MAX_VALUE}; // MAX_VALUE = busy
+        housekeeping.scheduleAtFixedRate(() -> {
+            sessions.expire();
+            if (exitWhenIdleSeconds <= 0) return;
+
+            long now = System.nanoTime();
+            if (!clients.all().isEmpty() || !rooms.isEmpty() || sessions.size() > 0) {
+                idleSince[0] = Long.MAX_VALUE;
+            } else if (idleSince[0] == Long.MAX_VALUE) {
+                idleSince[0] = now;
+            } else if (now - idleSince[0] >= TimeUnit.SECONDS.toNanos(exitWhenIdleSeconds)) {
+                System.out.println("Idle for " + exitWhenIdleSeconds + " seconds. Shutting down.");
+                System.exit(0);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
 
+    // "RESUME <token>": gives a reconnected player the id, score and room of its earlier session
+    public static void resumeSession(ClientThread client, long token) {
+        SessionTable.Session session;
+        // removeClient parks under the same lock, so a RESUME racing the old connection's
+        // disconnect waits for its session instead of finding neither
+        synchronized (sessions) {
+            // Reconnected before we noticed the old connection die: retire that one first
+            ClientThread stale = clients.findByToken(token);
+            if (stale != null && stale != client && !sessions.contains(token)) {
                 try {
-                    sendNextQuestionToAll();
+                    removeClient(stale);
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    // already gone
                 }
             }
-        });
+            session = sessions.claim(token);
+        }
+        if (session == null) {
+            client.sendMessage("RESUME_FAILED");
+            return;
+        }
+        // The parked score is read on its room's loop, so the resume goes there first
+        if (session.room == null) {
+            resumeInto(client, session);
+        } else {
+            session.room.post(() -> resumeInto(client, session));
+        }
     }
 
-    // Ends the game and displays final scores
-    private static void endGame() throws IOException {
-        if (hasPrintedWinners) return;
-        hasPrintedWinners = true;
-
-        System.out.println("\n Game Over. Final Scores:");
-        clients.sort((a, b) -> b.getScore() - a.getScore());
-        
-        //scoreboard 
-        StringBuilder scoreboard = new StringBuilder("SCOREBOARD|");
-        for (ClientThread client : clients) {
-            scoreboard.append("Client-")
-                      .append(client.getClientID())
-                      .append(":")
-                      .append(client.getScore())
-                      .append(";");
+    // Runs on the loop of the session's room, if it had one. The score and leaderboard
+    // change on the loop of the room the player ends up in
+    private static void resumeInto(ClientThread client, SessionTable.Session session) {
+        GameRoom target = session.room;
+        if (target != null && !target.isFinished()) {
+            adoptSession(client, session);
+            GameRoom current = client.getRoom();
+            if (current != null && current != target) {
+                current.leave(client);
+            }
+            target.rejoin(client);
+            return;
+        }
+        // No match to go back to: the player stays where it is, and counts that room's match from here
+        GameRoom current = client.getRoom();
+        if (current == null) {
+            adoptSession(client, session);
+            client.resetMatchStats();
+            return;
         }
+        current.post(() -> {
+            adoptSession(client, session);
+            client.resetMatchStats();
+            if (client.getRoom() == current) {
+                current.scoreChanged(client);
+            }
+        });
+    }
 
-        //sends final scores of clients to each client 
-        for (ClientThread client : new ArrayList<>(clients)) {
-            try {
-                client.sendMessage("FINAL_SCORE:" + client.getScore());
-                client.sendMessage(scoreboard.toString()); //sends full scoreboard i hope 
-                client.sendMessage("Game Over!");
-                System.out.println("Client " + client.getClientID() + ": " + client.getScore());
-            } catch (Exception e) {
-                System.out.println("Error sending final score to Client-" + client.getClientID() + ": " + e.getMessage());
+    private static void adoptSession(ClientThread client, SessionTable.Session session) {
+        int oldId = client.getClientID();
+        long oldToken = client.getSessionToken();
+        client.adoptSession(session);
+        clients.changeSession(client, oldId, oldToken);
+        Log.info("Client-" + session.clientId + " resumed its session with " + session.score + " points.");
+    }
+
+    // Reads a --name=value startup flag
+    private static String getFlag(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
             }
         }
+        return defaultValue;
+    }
 
-        try {
-            Thread.sleep(1000); // Allow time for clients to receive messages
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    public static OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(sendQueueCapacity, slowConsumerPolicy);
+    }
+
+    // Writer tasks for blocking connections share the client pool
+    public static Executor getWriterPool() {
+        return pool;
+    }
+
+    // Questions in the current bank
+    public static int getQuestionCount() {
+        return questions.size();
+    }
 
-        if (serverSocket != null && !serverSocket.isClosed()) {
-            serverSocket.close();
+    // The seen-questions filter of the player with this key, shared by all its connections
+    public static SeenQuestions seenQuestionsFor(long playerKey) {
+        synchronized (seenByPlayer) {
+            return seenByPlayer.computeIfAbsent(playerKey, key -> new SeenQuestions(questions.size()));
         }
+    }
 
-        pool.shutdownNow();
-        System.out.println("Server shutting down");
-        System.exit(0);
+    public static int nextClientID() {
+        return nextClientID.getAndIncrement();
     }
 
-    // Loads questions from a text file
-    private static void loadQuestions() {
-        try (InputStream is = TriviaServer.class.getResourceAsStream("/Questions.txt");
-             BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
+    // Unpredictable, unique token identifying a client's session
+    public static long newSessionToken() {
+        long token;
+        do {
+            token = tokenSource.nextLong();
+        } while (token == 0 || clients.hasToken(token) || sessions.contains(token));
+        return token;
+    }
 
-            String line;
-            while ((line = br.readLine()) != null) {
-                questions.add(new Question(line));
-            }
+    // Adds a newly connected client to the server and assigns it a room, used by both engines
+    public static void registerClient(ClientThread client) {
+        clients.add(client);
+        if (Log.event()) Log.info("Client-" + client.getClientID() + " connected.");
+        assignRoom(client);
+    }
 
-        } catch (IOException | NullPointerException e) {
-            System.out.println("Failed to load Questions.txt from JAR");
-            e.printStackTrace();
+    // Puts a player in the open room, starting a new room once it is full or over
+    private static void assignRoom(ClientThread client) {
+        GameRoom room;
+        synchronized (rooms) {
+            if (openRoom == null || openRoom.isFinished() || openRoom.isFull()) {
+                openRoom = createRoom("room-" + nextRoomNumber++);
+            }
+            room = openRoom;
         }
+        room.join(client);
     }
 
-    // Thread for listening to UDP buzzes from clients
-    private static class UDPBuzzThread extends Thread {
-        private final byte[] buffer = new byte[256];
-
-        public void run() {
-            try (DatagramSocket socket = new DatagramSocket(UDP_PORT)) {
-                while (true) {
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    socket.receive(packet);
-                    String message = new String(packet.getData(), 0, packet.getLength()).trim();
-                    InetAddress address = packet.getAddress();
-
-                    if (receivingBuzzes && message.equalsIgnoreCase("buzz")) {
-                        ClientThread client = findClientByAddress(address);
-                        if (client != null) {
-                            synchronized (TriviaServer.buzzQueue) {
-                                if (!TriviaServer.buzzQueue.contains(client)) {
-                                    TriviaServer.buzzQueue.offer(client);
-                                    System.out.println("Client-" + client.getClientID() + " buzzed.");
-                                }
-                            }
-                        } else {
-                            System.out.println("No matching client found for UDP address: " + address);
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                System.out.println("UDP Thread error: " + e.getMessage());
+    // Moves a player to the room it asked for with "JOIN <name>", creating it if needed
+    public static void moveToRoom(ClientThread client, String name) {
+        GameRoom target;
+        synchronized (rooms) {
+            target = rooms.get(name);
+            if (target != null && (target.isFinished() || target.isFull())) {
+                client.sendMessage("ROOM_UNAVAILABLE " + name);
+                return;
+            }
+            if (target == null) {
+                target = createRoom(name);
             }
         }
 
-        private ClientThread findClientByAddress(InetAddress address) {
-            synchronized (clients) {
-                for (ClientThread client : clients) {
-                    if (client.getSocket().getInetAddress().equals(address)) {
-                        return client;
-                    }
-                }
-            }
-            return null;
+        GameRoom current = client.getRoom();
+        if (current == target) return;
+        if (current != null) {
+            current.leave(client);
         }
+        target.join(client);
     }
 
-    // Starts a countdown timer and broadcasts time left to clients
-    public static void startTimer(int seconds, Runnable onExpire) {
-        activeTimer.cancel();
-        activeTimer = new Timer();
+    // Must hold the rooms lock
+    private static GameRoom createRoom(String name) {
+        GameRoom room = new GameRoom(name, players -> dealDeck(name, players), roomSize, scheduler);
+        rooms.put(name, room);
+        room.openLobby();
+        return room;
+    }
 
-        activeTimer.scheduleAtFixedRate(new TimerTask() {
-            int timeLeft = seconds;
+    // Picks a match's questions when it starts
+    private static List<Question> dealDeck(String room, List<ClientThread> players) {
+        List<Question> bank = questions; // one bank per deal, even if a reload lands meanwhile
+        if (!randomDecks) {
+            return bank.subList(0, Math.min(matchLength, bank.size()));
+        }
 
-            @Override
-            public void run() {
-                for (ClientThread client : clients) {
-                    client.sendMessage("TIMER:" + timeLeft);
-                }
+        long seed = deckSeed != null ? deckSeed + room.hashCode() : tokenSource.nextLong();
+        List<SeenQuestions> seen = new ArrayList<>();
+        for (ClientThread player : players) {
+            SeenQuestions shown = player.getSeenQuestions();
+            if (shown != null) seen.add(shown); // none yet: nothing to skip
+        }
+        List<Question> deck = new DeckBuilder(bank).deal(matchLength, deckCategory, deckDifficulty, seed, seen);
+        Log.info("[" + room + "] Dealt " + deck.size() + " questions (seed " + seed + ")");
+        return deck;
+    }
 
-                if (timeLeft <= 0) {
-                    cancel();
-                    onExpire.run();
-                }
+    public static void removeRoom(GameRoom room) {
+        rooms.remove(room.getName(), room);
+        Log.info("[" + room.getName() + "] Room closed.");
+    }
+
+    // Loads a text or compiled (.tqb) question bank and reloads it whenever the file changes.
+    // Matches already dealt keep their decks; new matches deal from the reloaded bank
+    private static void loadBank(String file) {
+        QuestionBankWatcher watcher = new QuestionBankWatcher(Paths.get(file));
+        try {
+            questions = watcher.load();
+            System.out.println("Loaded " + questions.size() + " questions from " + file);
+        } catch (IOException e) {
+            System.out.println("Failed to open question bank " + file + ": " + e.getMessage()
+                    + ". Using the bundled questions.");
+            loadQuestions();
+        }
+
+        try {
+            watcher.start(TriviaServer::replaceQuestions);
+        } catch (IOException e) {
+            System.out.println("Can't watch " + file + " for changes: " + e.getMessage());
+        }
+    }
+
+    private static void replaceQuestions(List<Question> bank) {
+        List<Question> old = questions;
+        questions = bank;
+        Log.info("Question bank reloaded: " + bank.size() + " questions.");
 
-                timeLeft--;
+        // Decks dealt from the old mapping were copied out of it, and the mapping itself
+        // stays readable after its channel closes, so only the file handle is released
+        if (old instanceof MappedQuestionBank mapped) {
+            try {
+                mapped.close();
+            } catch (IOException e) {
+                System.out.println("Failed to close the old question bank: " + e.getMessage());
             }
-        }, 0, 1000);
+        }
     }
 
-    // Removes a client and shuts down server if no clients remain
-    public static void removeClient(ClientThread client) throws IOException {
-        clients.remove(client);
-        System.out.println("Removing Client-" + client.getClientID());
-        client.close();
-
-        if(clients.isEmpty()) {
-            System.out.println("All clients disconnected. Shutting down server...");
-            serverSocket.close();
-            pool.shutdownNow();
-            System.out.println("Server shutting down");
-            System.exit(0);
+    // Loads questions from a text file
+    private static void loadQuestions() {
+        try (InputStream is = TriviaServer.class.getResourceAsStream("/Questions.txt");
+             BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
+
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                try {
+                    questions.add(new Question(line));
+                } catch (RuntimeException e) {
+                    System.out.println("Questions.txt line " + lineNumber + " skipped: " + e.getMessage());
+                }
+            }
+
+        } catch (IOException | NullPointerException e) {
+            System.out.println("Failed to load Questions.txt from JAR");
+            e.printStackTrace();
         }
     }
 
-    public static int getCurrentQuestionIndex() {
-        return currentQuestionIndex;
+    public static ClientThread findClientByToken(long token) {
+        return clients.findByToken(token);
     }
 
-    // Called when a client runs out of time to answer
-    public static void clientOutOfTime(ClientThread client) throws IOException {
-    	if (client.getCanAnswer()) {
-    		client.setCanAnswer(false);
-    		client.decreaseScore(20);
-    		client.sendMessage("noAnswerPenalty " + client.getScore());
-    		System.out.println("Client -" + client.getClientID() + " buzzed in but didn't answer. -20");
-    	}
-    	
-    	client.sendMessage("Time expired");
-    	sendNextQuestionToAll();
+    public static ClientThread findClientByAddress(InetAddress address) {
+        return clients.findByAddress(address);
     }
 
-    // Handles timer after answer submission (5 seconds)
-    public static void handleSubmission() {
-        startTimer(5, () -> {
-            for (ClientThread client : clients) {
-                client.sendMessage("You may poll again.");
-                client.sendMessage("UNLOCK_POLL");
-            }
-        });
+    // Removes a client from the server and its room; an emptied room closes itself
+    // A dropped connection: the player can RESUME within the grace period and keep its place
+    public static void removeClient(ClientThread client) throws IOException {
+        removeClient(client, true);
     }
 
-    // Advances the game to the next question
-    public static void moveAllToNextQuestion() throws IOException {
-        sendNextQuestionToAll();
+    // Only resumable players are parked; a kicked player, or one whose match is over, is gone for good
+    public static void removeClient(ClientThread client, boolean resumable) throws IOException {
+        // Held until the session is parked and the room told, so a RESUME racing this
+        // disconnect finds the session and is handled on the room's loop after it
+        synchronized (sessions) {
+            // Already removed, e.g. kicked by admin before its socket reported the disconnect
+            if (!clients.remove(client)) return;
+            if (Log.event()) Log.info("Removing Client-" + client.getClientID());
+            client.close();
+
+            GameRoom room = client.getRoom();
+            boolean park = resumable && resumeGraceSeconds > 0 && (room == null || !room.isFinished());
+            if (park) {
+                // Just the player's id, score, match stats, room and seen questions: no socket or thread stays behind
+                SessionTable.Session session = new SessionTable.Session(client.getSessionToken(), client.getClientID(),
+                        0, null, room, client.getSeenQuestions(),
+                        System.nanoTime() + TimeUnit.SECONDS.toNanos(resumeGraceSeconds));
+                if (room == null) {
+                    session.score = client.getScore();
+                } else {
+                    // Only the room's loop touches the score; a RESUME posts there too, so it sees this
+                    room.post(() -> {
+                        session.score = client.getScore();
+                        session.match = client.getMatchStats();
+                    });
+                }
+                sessions.park(session);
+            }
+            if (room == null) return;
+            if (park) {
+                room.disconnect(client, resumeGraceSeconds);
+            } else {
+                room.leave(client);
+            }
+        }
     }
 }
@@ -0,0 +1,286 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Receives UDP buzzes on several threads. Where the OS supports SO_REUSEPORT each
+// thread gets its own channel bound to the same port and the kernel spreads
+// packets across them; otherwise the threads share one channel. Each thread
+// reuses two direct buffers and parses packets byte by byte, so the hot path
+// allocates no Strings.
+//
+// Packets:
+//   buzz                       from a client that predates session tokens, matched by address
+//   buzz <token>               unacknowledged
+//   buzz <token> <seq>         answered with "ack <seq>"; clients resend until acked
+//   buzz <token> <seq> <round> same, counted only while question number <round> is open,
+//                              so a resend that arrives after its question is dropped
+//   ping <token> <seq> [<rtt>] answered with "pong <seq>"; rtt is the client's smoothed
+//                              round trip in microseconds
+// Tokens are hex, seq and rtt decimal. Replies only go to packets whose token matches a
+// player, and are never bigger than the packet, so the port can't be used as a reflector.
+//
+// With latency compensation on, a buzz is ranked as if sent half its player's round trip
+// before it arrived, up to a cap. The round trip is the player's own report, so the cap
+// bounds what a player could gain by overstating it.
+public class UdpBuzzReceiver {
+    private static final int MAX_PACKET = 256;
+    private static final byte[] BUZZ = {'b', 'u', 'z', 'z'};
+    private static final byte[] PING = {'p', 'i', 'n', 'g'};
+    private static final byte[] ACK = {'a', 'c', 'k', ' '};
+    private static final byte[] PONG = {'p', 'o', 'n', 'g', ' '};
+    private static final int MAX_DIGITS = 18; // seq and rtt fit a long
+
+    private final int port;
+    private final int threads;
+    private final long maxCompensationNanos; // 0 = rank buzzes by arrival
+
+    // Counters, exposed through describe()
+    private final LongAdder received = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();   // round closed or stale, duplicate or late joiner
+    private final LongAdder unmatched = new LongAdder(); // no client for the token/address
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder pings = new LongAdder();
+    private final long startedAt = System.nanoTime();
+
+    public UdpBuzzReceiver(int port, int threads) {
+        this(port, threads, 0);
+    }
+
+    // maxCompensationMillis > 0 ranks buzzes by estimated send time, moving none by more than that
+    public UdpBuzzReceiver(int port, int threads, int maxCompensationMillis) {
+        this.port = port;
+        this.threads = Math.max(1, threads);
+        this.maxCompensationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxCompensationMillis));
+    }
+
+    public void start() throws IOException {
+        DatagramChannel shared = null;
+        for (int i = 0; i < threads; i++) {
+            DatagramChannel channel;
+            if (shared != null) {
+                channel = shared;
+            } else {
+                channel = DatagramChannel.open(StandardProtocolFamily.INET);
+                boolean reusePort = threads > 1 && channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+                if (reusePort) {
+                    channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                channel.bind(new InetSocketAddress(port));
+                if (!reusePort) {
+                    shared = channel;
+                }
+            }
+
+            DatagramChannel receiveOn = channel;
+            Thread thread = new Thread(() -> receiveLoop(receiveOn), "udp-buzz-" + i);
+            thread.start();
+        }
+        System.out.println("Listening for UDP buzzes on port " + port + " with " + threads + " thread(s)"
+                + (shared == null && threads > 1 ? " (SO_REUSEPORT)" : "")
+                + (maxCompensationNanos > 0
+                        ? ", latency compensation up to " + TimeUnit.NANOSECONDS.toMillis(maxCompensationNanos) + " ms"
+                        : ""));
+    }
+
+    private void receiveLoop(DatagramChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET);
+        ByteBuffer reply = ByteBuffer.allocateDirect(MAX_PACKET);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                long arrivalNanos = System.nanoTime();
+                buffer.flip();
+                received.increment();
+                reply.clear();
+                handle(buffer, sender, arrivalNanos, reply);
+                if (reply.position() > 0) {
+                    reply.flip();
+                    try {
+                        channel.send(reply, sender);
+                    } catch (IOException e) {
+                        // the client resends until acked
+                    }
+                }
+            } catch (IOException e) {
+                Log.info("UDP Thread error: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Parses one packet; anything to send back is left in reply
+    private void handle(ByteBuffer packet, SocketAddress sender, long arrivalNanos, ByteBuffer reply) {
+        int pos = packet.position();
+        int end = packet.limit();
+        while (pos < end && packet.get(pos) <= ' ') pos++;
+        while (end > pos && packet.get(end - 1) <= ' ') end--;
+
+        boolean ping;
+        if (startsWith(packet, pos, end, BUZZ)) {
+            ping = false;
+        } else if (startsWith(packet, pos, end, PING)) {
+            ping = true;
+        } else {
+            malformed.increment();
+            return;
+        }
+        pos += BUZZ.length;
+
+        ClientThread client;
+        if (pos == end) {
+            // Bare "buzz" from a client that predates session tokens
+            if (ping) {
+                malformed.increment();
+                return;
+            }
+            client = TriviaServer.findClientByAddress(((InetSocketAddress) sender).getAddress());
+        } else {
+            if (packet.get(pos) > ' ') {
+                malformed.increment();
+                return;
+            }
+            pos = skipSpace(packet, pos, end);
+            int tokenEnd = fieldEnd(packet, pos, end);
+            long token = parseHex(packet, pos, tokenEnd);
+            if (token == 0) {
+                malformed.increment();
+                return;
+            }
+            client = TriviaServer.findClientByToken(token);
+            pos = skipSpace(packet, tokenEnd, end);
+        }
+
+        // Optional sequence number (required for a ping), then the ping's round trip or the
+        // buzz's round
+        int seqStart = pos;
+        int seqEnd = fieldEnd(packet, pos, end);
+        if (seqEnd > seqStart && parseDecimal(packet, seqStart, seqEnd) < 0) {
+            malformed.increment();
+            return;
+        }
+        int lastStart = skipSpace(packet, seqEnd, end);
+        long last = lastStart == end ? -1 : parseDecimal(packet, lastStart, end);
+        if ((lastStart != end && (last < 0 || seqEnd == seqStart)) || (ping && seqEnd == seqStart)) {
+            malformed.increment();
+            return;
+        }
+        long rttMicros = ping ? last : -1;
+        int round = ping || last <= 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, last);
+
+        if (client == null) {
+            unmatched.increment();
+            return;
+        }
+        if (seqEnd > seqStart) {
+            // Echo the sequence number back as it came, so nothing is formatted
+            reply.put(ping ? PONG : ACK);
+            for (int i = seqStart; i < seqEnd; i++) {
+                reply.put(packet.get(i));
+            }
+        }
+
+        if (ping) {
+            pings.increment();
+            if (rttMicros >= 0) {
+                client.setUdpRttMicros((int) Math.min(Integer.MAX_VALUE, rttMicros));
+            }
+            return;
+        }
+
+        GameRoom room = client.getRoom();
+        if (room == null) {
+            unmatched.increment();
+        } else {
+            // Judged on the room's loop; the counters catch up once it has
+            room.offerBuzz(client, round, arrivalNanos, compensationNanos(client),
+                    counted -> (counted ? accepted : dropped).increment());
+        }
+    }
+
+    // Half the player's round trip, within the cap; 0 with compensation off
+    private long compensationNanos(ClientThread client) {
+        if (maxCompensationNanos == 0) return 0;
+        long oneWay = TimeUnit.MICROSECONDS.toNanos(client.getUdpRttMicros()) / 2;
+        return Math.min(oneWay, maxCompensationNanos);
+    }
+
+    // True if the packet starts with the opcode (any case) followed by whitespace or its end
+    private static boolean startsWith(ByteBuffer packet, int pos, int end, byte[] opcode) {
+        if (end - pos < opcode.length) return false;
+        for (int i = 0; i < opcode.length; i++) {
+            if ((packet.get(pos + i) | 0x20) != opcode[i]) return false;
+        }
+        return pos + opcode.length == end || packet.get(pos + opcode.length) <= ' ';
+    }
+
+    private static int skipSpace(ByteBuffer packet, int pos, int end) {
+        while (pos < end && packet.get(pos) <= ' ') pos++;
+        return pos;
+    }
+
+    private static int fieldEnd(ByteBuffer packet, int pos, int end) {
+        while (pos < end && packet.get(pos) > ' ') pos++;
+        return pos;
+    }
+
+    // Up to MAX_DIGITS decimal digits; -1 if anything else
+    private static long parseDecimal(ByteBuffer packet, int pos, int end) {
+        if (end == pos || end - pos > MAX_DIGITS) return -1;
+        long value = 0;
+        for (int i = pos; i < end; i++) {
+            int digit = packet.get(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // Up to 16 hex digits; 0 if anything else (tokens are never 0)
+    private static long parseHex(ByteBuffer packet, int pos, int end) {
+        if (end - pos > 16) return 0;
+        long value = 0;
+        for (int i = pos; i < end; i++) {
+            int digit = Character.digit(packet.get(i), 16);
+            if (digit < 0) return 0;
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    // One-line summary for the admin console
+    public String describe() {
+        double seconds = Math.max(1, (System.nanoTime() - startedAt) / 1e9);
+        return String.format("UDP buzzes: %d received (%.1f/s), %d accepted, %d dropped, %d unmatched, %d malformed, %d pings",
+                received.sum(), received.sum() / seconds, accepted.sum(), dropped.sum(), unmatched.sum(), malformed.sum(),
+                pings.sum());
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getUnmatched() {
+        return unmatched.sum();
+    }
+
+    public long getMalformed() {
+        return malformed.sum();
+    }
+
+    public long getPings() {
+        return pings.sum();
+    }
+}
@@ -0,0 +1,512 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Server -> client wire formats. Every client starts on the newline-delimited text
+// protocol; right after "Welcome" the server advertises "PROTOCOLS text binary/1 deadlines"
+// and a client that answers "PROTOCOL binary/1" gets the reply "PROTOCOL binary/1" as its
+// last text line, then binary frames from there on. Clients keep sending text lines.
+// "deadlines" is not a protocol but says the server takes "TIMERS deadline", below.
+//
+// Binary frame: varint length of the rest, one opcode byte, then the opcode's fields.
+// Integers are unsigned varints (scores zigzag-encoded, since they go negative) and
+// strings are a varint byte count followed by UTF-8. Anything without its own opcode
+// travels as a TEXT frame holding the same line the text protocol would send.
+//
+// A client that sends "TIMERS deadline", in either protocol, gets one PHASE message per phase, carrying the
+// phase length and its deadline on the server's wall clock, instead of a TIMER tick every
+// second, and counts down locally. "CLOCK <client millis>" is answered with
+// "CLOCK <client millis> <server millis>" so the client can estimate its clock offset.
+//
+// After each question the room sends STANDINGS (the top of its leaderboard) when that
+// changed, and RANK to each player whose own rank changed; the final SCOREBOARD holds
+// the same top players, so no message grows with the size of the room.
+public final class WireProtocol {
+    public static final int VERSION = 1;
+    public static final String ADVERTISE = "PROTOCOLS text binary/" + VERSION + " deadlines";
+    public static final String BINARY = "PROTOCOL binary/" + VERSION;
+    public static final String TEXT_ONLY = "PROTOCOL text";
+    public static final String DEADLINES = "TIMERS deadline";
+
+    public static final int OP_TEXT = 1;        // string line
+    public static final int OP_TIMER = 2;       // varint seconds left
+    public static final int OP_QUESTION = 3;    // string number, string text, varint n, n strings
+    public static final int OP_ACK = 4;
+    public static final int OP_NAK = 5;
+    public static final int OP_SCORE = 6;       // byte kind, zigzag score
+    public static final int OP_FINAL_SCORE = 7; // zigzag score
+    public static final int OP_SCOREBOARD = 8;  // varint n, n x (varint client id, zigzag score)
+    public static final int OP_PHASE = 9;       // string name, varint seconds, varlong deadline millis
+    public static final int OP_CLOCK = 10;      // varlong client millis, varlong server millis
+    public static final int OP_STANDINGS = 11;  // varint n, n x (varint rank, varint client id, zigzag score)
+    public static final int OP_RANK = 12;       // varint rank, varint players
+
+    // OP_SCORE kinds, matching the text lines "score n", "correct n", "wrong n", "noAnswerPenalty n"
+    public static final int SCORE = 0;
+    public static final int CORRECT = 1;
+    public static final int WRONG = 2;
+    public static final int PENALTY = 3;
+    private static final String[] SCORE_WORDS = {"score ", "correct ", "wrong ", "noAnswerPenalty "};
+
+    private static final int MAX_FRAME = 1 << 20;
+
+    // One server message, encoded in each protocol the first time a recipient on that
+    // protocol needs it and then shared by every other such recipient. A message sent to
+    // one client (a score, a rank, a clock reply) is only ever built in that client's
+    // protocol. Two threads racing on first use just build the same bytes twice.
+    public static final class Message {
+        private final Supplier<byte[]> line;
+        private final Supplier<byte[]> frame;
+        private volatile byte[] text;
+        private volatile byte[] binary;
+
+        private Message(Supplier<byte[]> line, Supplier<byte[]> frame) {
+            this.line = line;
+            this.frame = frame;
+        }
+
+        public byte[] encoded(boolean binaryProtocol) {
+            if (binaryProtocol) {
+                byte[] bytes = binary;
+                if (bytes == null) {
+                    binary = bytes = frame.get();
+                }
+                return bytes;
+            }
+            byte[] bytes = text;
+            if (bytes == null) {
+                text = bytes = line.get();
+            }
+            return bytes;
+        }
+    }
+
+    private static Message of(Supplier<String> line, Supplier<byte[]> frame) {
+        return new Message(() -> (line.get() + "\n").getBytes(StandardCharsets.UTF_8), frame);
+    }
+
+    public static final Message ACK = of(() -> "ACK", () -> frame(OP_ACK).build());
+    public static final Message NAK = of(() -> "NAK", () -> frame(OP_NAK).build());
+
+    private WireProtocol() {
+    }
+
+    public static Message text(String line) {
+        return of(() -> line, () -> encodeText(line));
+    }
+
+    // Binary form of a plain text line, for messages sent straight to one client
+    public static byte[] encodeText(String line) {
+        return frame(OP_TEXT).string(line).build();
+    }
+
+    public static Message timer(int secondsLeft) {
+        return of(() -> "TIMER:" + secondsLeft, () -> frame(OP_TIMER).varint(secondsLeft).build());
+    }
+
+    // Start of a countdown phase: PHASE buzz 15 1760000000000
+    public static Message phase(String name, int seconds, long deadlineMillis) {
+        return of(() -> "PHASE " + name + " " + seconds + " " + deadlineMillis,
+                () -> frame(OP_PHASE).string(name).varint(seconds).varlong(deadlineMillis).build());
+    }
+
+    // Reply to a client's clock probe, sent to that client only
+    public static Message clock(long clientMillis, long serverMillis) {
+        return of(() -> "CLOCK " + clientMillis + " " + serverMillis,
+                () -> frame(OP_CLOCK).varlong(clientMillis).varlong(serverMillis).build());
+    }
+
+    // QUESTION|Question 3|text|A|B|C|D, numbered by the room in play order. Everything
+    // after the number comes from questionTail, encoded once per Question and protocol and
+    // shared by every room that deals it; only the number is encoded per broadcast
+    public static Message question(String number, Question q) {
+        Message tail = q.getWireForm();
+        return new Message(() -> {
+            byte[] head = ("QUESTION|" + number).getBytes(StandardCharsets.UTF_8);
+            byte[] rest = tail.encoded(false);
+            byte[] line = Arrays.copyOf(head, head.length + rest.length);
+            System.arraycopy(rest, 0, line, head.length, rest.length);
+            return line;
+        }, () -> frame(OP_QUESTION).string(number).raw(tail.encoded(true)).build());
+    }
+
+    // The buzz round a question is for: the play-order number that ends its number field,
+    // 3 for "Question 3". 0 if it has none, e.g. from a server that numbers differently
+    public static int questionRound(String number) {
+        int start = number.length();
+        while (start > 0 && Character.isDigit(number.charAt(start - 1))) start--;
+        if (start == number.length() || number.length() - start > 9) return 0;
+        return Integer.parseInt(number, start, number.length(), 10);
+    }
+
+    // A question's text and options, "|text|A|B|C|D" and their OP_QUESTION fields, without
+    // a frame; see question. '|' can't appear inside fields since Questions.txt uses it as
+    // the separator
+    static Message questionTail(Question q) {
+        return of(() -> "|" + q.getQuestionText() + "|" + String.join("|", q.getOptions()), () -> {
+            FrameBuilder fields = new FrameBuilder().string(q.getQuestionText());
+            String[] options = q.getOptions();
+            fields.varint(options.length);
+            for (String option : options) {
+                fields.string(option);
+            }
+            return fields.body();
+        });
+    }
+
+    public static Message score(int kind, int score) {
+        return of(() -> SCORE_WORDS[kind] + score, () -> frame(OP_SCORE).varint(kind).zigzag(score).build());
+    }
+
+    public static Message finalScore(int score) {
+        return of(() -> "FINAL_SCORE:" + score, () -> frame(OP_FINAL_SCORE).zigzag(score).build());
+    }
+
+    // Text form is GameRoom.buildScoreboard's SCOREBOARD|Client-0:30;Client-1:10;
+    public static Message scoreboard(List<Leaderboard.Standing> top) {
+        return of(() -> GameRoom.buildScoreboard(top), () -> {
+            FrameBuilder frame = frame(OP_SCOREBOARD).varint(top.size());
+            for (Leaderboard.Standing standing : top) {
+                frame.varint(standing.clientId()).zigzag(standing.score());
+            }
+            return frame.build();
+        });
+    }
+
+    // Live leaderboard: STANDINGS|1:Client-0:30;2:Client-3:20;2:Client-1:20;
+    public static Message standings(List<Leaderboard.Standing> top) {
+        return of(() -> {
+            StringBuilder line = new StringBuilder("STANDINGS|");
+            for (Leaderboard.Standing standing : top) {
+                line.append(standing.rank()).append(":Client-").append(standing.clientId())
+                    .append(':').append(standing.score()).append(';');
+            }
+            return line.toString();
+        }, () -> {
+            FrameBuilder frame = frame(OP_STANDINGS).varint(top.size());
+            for (Leaderboard.Standing standing : top) {
+                frame.varint(standing.rank()).varint(standing.clientId()).zigzag(standing.score());
+            }
+            return frame.build();
+        });
+    }
+
+    // One player's own place: RANK 4 120
+    public static Message rank(int rank, int players) {
+        return of(() -> "RANK " + rank + " " + players, () -> frame(OP_RANK).varint(rank).varint(players).build());
+    }
+
+    // Also used by GameJournal, whose records share this framing
+    static FrameBuilder frame(int opcode) {
+        return new FrameBuilder(opcode);
+    }
+
+    static final class FrameBuilder {
+        private final Bytes body = new Bytes();
+
+        FrameBuilder(int opcode) {
+            body.write(opcode);
+        }
+
+        // Just fields, to be added to a frame later with raw()
+        private FrameBuilder() {
+        }
+
+        FrameBuilder varint(int value) {
+            writeVarint(body, value);
+            return this;
+        }
+
+        FrameBuilder varlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                body.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            body.write((int) value);
+            return this;
+        }
+
+        FrameBuilder zigzag(int value) {
+            return varint((value << 1) ^ (value >> 31));
+        }
+
+        FrameBuilder string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            body.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        FrameBuilder raw(byte[] fields) {
+            body.write(fields, 0, fields.length);
+            return this;
+        }
+
+        private byte[] body() {
+            return body.toByteArray();
+        }
+
+        byte[] build() {
+            ByteArrayOutputStream framed = new ByteArrayOutputStream(body.size() + 3);
+            writeVarint(framed, body.size());
+            framed.write(body.buffer(), 0, body.size());
+            return framed.toByteArray();
+        }
+    }
+
+    // Lets build() copy the body out without an intermediate array
+    private static final class Bytes extends ByteArrayOutputStream {
+        Bytes() {
+            super(32);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    // Client side: what a decoded server message turns into
+    public interface Listener {
+        // Every message before the switch to binary, and TEXT frames after it
+        void onLine(String line);
+
+        void onTimer(int secondsLeft);
+
+        void onQuestion(String number, String text, String[] options);
+
+        void onAck();
+
+        void onNak();
+
+        // kind is SCORE, CORRECT, WRONG or PENALTY
+        void onScore(int kind, int score);
+
+        void onFinalScore(int score);
+
+        // Ranked highest first
+        void onScoreboard(int[] clientIds, int[] scores);
+
+        // Top of the room's live leaderboard, highest first; tied players share a rank
+        void onStandings(int[] ranks, int[] clientIds, int[] scores);
+
+        // Our own place among the room's players
+        void onRank(int rank, int players);
+
+        // A countdown started; it ends at deadlineMillis on the server's clock
+        void onPhase(String name, int seconds, long deadlineMillis);
+
+        // Answer to our "CLOCK <clientMillis>" probe
+        void onClock(long clientMillis, long serverMillis);
+    }
+
+    // Client side: reads text lines until switchToBinary(), then binary frames, off one stream
+    public static final class Reader {
+        private final InputStream in;
+        private boolean binary;
+        private byte[] buffer = new byte[256];
+
+        public Reader(InputStream in) {
+            this.in = new BufferedInputStream(in);
+        }
+
+        // Call on the reading thread right after the "PROTOCOL binary/1" line
+        public void switchToBinary() {
+            binary = true;
+        }
+
+        public boolean isBinary() {
+            return binary;
+        }
+
+        // Reads one message and hands it to the listener; false at end of stream
+        public boolean read(Listener listener) throws IOException {
+            if (!binary) {
+                String line = readLine();
+                if (line == null) return false;
+                listener.onLine(line);
+                return true;
+            }
+
+            int length = readVarint();
+            if (length < 0) return false;
+            if (length == 0 || length > MAX_FRAME) {
+                throw new IOException("Bad frame length " + length);
+            }
+            byte[] frame = readFully(length);
+            dispatch(new Cursor(frame, length), listener);
+            return true;
+        }
+
+        private void dispatch(Cursor frame, Listener listener) throws IOException {
+            int opcode = frame.readByte();
+            switch (opcode) {
+                case OP_TEXT -> listener.onLine(frame.readString());
+                case OP_TIMER -> listener.onTimer(frame.readVarint());
+                case OP_QUESTION -> {
+                    String number = frame.readString();
+                    String text = frame.readString();
+                    String[] options = new String[frame.readVarint()];
+                    for (int i = 0; i < options.length; i++) {
+                        options[i] = frame.readString();
+                    }
+                    listener.onQuestion(number, text, options);
+                }
+                case OP_ACK -> listener.onAck();
+                case OP_NAK -> listener.onNak();
+                case OP_SCORE -> {
+                    int kind = frame.readVarint();
+                    listener.onScore(kind, frame.readZigzag());
+                }
+                case OP_FINAL_SCORE -> listener.onFinalScore(frame.readZigzag());
+                case OP_SCOREBOARD -> {
+                    int count = frame.readVarint();
+                    int[] ids = new int[count];
+                    int[] scores = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        ids[i] = frame.readVarint();
+                        scores[i] = frame.readZigzag();
+                    }
+                    listener.onScoreboard(ids, scores);
+                }
+                case OP_STANDINGS -> {
+                    int count = frame.readVarint();
+                    int[] ranks = new int[count];
+                    int[] ids = new int[count];
+                    int[] scores = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        ranks[i] = frame.readVarint();
+                        ids[i] = frame.readVarint();
+                        scores[i] = frame.readZigzag();
+                    }
+                    listener.onStandings(ranks, ids, scores);
+                }
+                case OP_RANK -> {
+                    int rank = frame.readVarint();
+                    listener.onRank(rank, frame.readVarint());
+                }
+                case OP_PHASE -> {
+                    String name = frame.readString();
+                    int seconds = frame.readVarint();
+                    listener.onPhase(name, seconds, frame.readVarlong());
+                }
+                case OP_CLOCK -> {
+                    long clientMillis = frame.readVarlong();
+                    listener.onClock(clientMillis, frame.readVarlong());
+                }
+                default -> {
+                    // newer server, opcode we don't know: skip the frame
+                }
+            }
+        }
+
+        // UTF-8 line without the trailing \n (or \r\n); null at end of stream
+        private String readLine() throws IOException {
+            int length = 0;
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    if (length == 0) return null;
+                    break;
+                }
+                if (length == buffer.length) {
+                    if (length >= MAX_FRAME) throw new IOException("Line too long");
+                    buffer = Arrays.copyOf(buffer, length * 2);
+                }
+                buffer[length++] = (byte) b;
+            }
+            if (length > 0 && buffer[length - 1] == '\r') length--;
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // -1 at a clean end of stream
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    if (shift == 0) return -1;
+                    throw new EOFException();
+                }
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Varint too long");
+        }
+
+        private byte[] readFully(int length) throws IOException {
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            int read = 0;
+            while (read < length) {
+                int n = in.read(buffer, read, length - read);
+                if (n < 0) throw new EOFException();
+                read += n;
+            }
+            return buffer;
+        }
+    }
+
+    static final class Cursor {
+        private final byte[] data;
+        private final int end;
+        private int pos;
+
+        Cursor(byte[] data, int end) {
+            this.data = data;
+            this.end = end;
+        }
+
+        boolean hasRemaining() {
+            return pos < end;
+        }
+
+        int readByte() throws IOException {
+            if (pos >= end) throw new EOFException("Truncated frame");
+            return data[pos++] & 0xFF;
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Varint too long");
+        }
+
+        long readVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Varint too long");
+        }
+
+        int readZigzag() throws IOException {
+            int raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        String readString() throws IOException {
+            int length = readVarint();
+            if (length < 0 || length > end - pos) throw new EOFException("Truncated frame");
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}